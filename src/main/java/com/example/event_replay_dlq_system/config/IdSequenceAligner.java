@@ -0,0 +1,83 @@
+package com.example.event_replay_dlq_system.config;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.AbstractDependsOnBeanFactoryPostProcessor;
+import org.springframework.data.jpa.repository.support.JpaRepositoryFactoryBean;
+import org.springframework.data.repository.Repository;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Tables created before the switch from IDENTITY to pooled sequences already hold ids,
+ * while ddl-auto creates their sequences starting at 1.
+ * Moves each sequence past the highest existing id once, it never moves a sequence backwards.
+ * Runs while the context is initialized, right after the entity manager factory created the sequences:
+ * every repository and JdbcTemplate depends on it, so no insert can draw an id before the alignment,
+ * and a failed alignment fails the startup.
+ */
+@Slf4j
+@Component
+public class IdSequenceAligner implements InitializingBean {
+
+    private static final Map<String, String> SEQUENCES = Map.of(
+            "events", "events_seq",
+            "replay_events", "replay_events_seq",
+            "replay_sessions", "replay_sessions_seq",
+            "event_processing_log", "event_processing_log_seq",
+            "dead_letter_queue", "dead_letter_queue_seq"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * @param entityManagerFactory not used, ddl-auto has run once it exists
+     */
+    public IdSequenceAligner(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        // own template, the JdbcTemplate bean waits for this one
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        SEQUENCES.forEach((table, sequence) -> {
+            try {
+                align(table, sequence);
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to align sequence " + sequence + " with the ids of " + table, e);
+            }
+        });
+    }
+
+    private void align(String table, String sequence) {
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + table, Long.class);
+        Long lastValue = jdbcTemplate.queryForObject("SELECT last_value FROM " + sequence, Long.class);
+
+        if (maxId != null && lastValue != null && lastValue <= maxId) {
+            jdbcTemplate.queryForObject("SELECT setval(CAST(? AS regclass), ?)", Long.class, sequence, maxId + 50);
+            log.info("Moved sequence {} past existing ids of {} (max id {})", sequence, table, maxId);
+        }
+    }
+
+    @Component
+    static class RepositoriesDependOnAligner extends AbstractDependsOnBeanFactoryPostProcessor {
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        RepositoriesDependOnAligner() {
+            super(Repository.class, (Class) JpaRepositoryFactoryBean.class, "idSequenceAligner");
+        }
+    }
+
+    @Component
+    static class JdbcOperationsDependOnAligner extends AbstractDependsOnBeanFactoryPostProcessor {
+
+        JdbcOperationsDependOnAligner() {
+            super(JdbcOperations.class, "idSequenceAligner");
+        }
+    }
+}
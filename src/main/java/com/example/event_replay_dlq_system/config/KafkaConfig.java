@@ -9,8 +9,11 @@ import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
 import org.springframework.kafka.config.TopicBuilder;
 import org.springframework.kafka.core.*;
+import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
 
@@ -20,6 +23,12 @@ import java.util.Map;
 @Configuration
 public class KafkaConfig {
 
+    private final Environment environment;
+
+    public KafkaConfig(Environment environment) {
+        this.environment = environment;
+    }
+
 
     @Value("${event-system.kafka.topics.events}")
     private String eventsTopic;
@@ -36,6 +45,18 @@ public class KafkaConfig {
     @Value("${spring.kafka.producer.retries}")
     private int retries;
 
+    @Value("${spring.kafka.producer.batch-size}")
+    private int batchSize;
+
+    @Value("${spring.kafka.producer.compression-type}")
+    private String compressionType;
+
+    @Value("${spring.kafka.producer.properties.linger.ms}")
+    private int lingerMs;
+
+    @Value("${event-system.consumer.mode}")
+    private String consumerMode;
+
     @Value("${spring.kafka.bootstrap-servers}")
     private String bootstrapServers;
 
@@ -48,20 +69,94 @@ public class KafkaConfig {
         config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, JsonSerializer.class);
         config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
         config.put(ProducerConfig.ACKS_CONFIG, "all");
+        config.put(ProducerConfig.BATCH_SIZE_CONFIG, batchSize);
+        config.put(ProducerConfig.LINGER_MS_CONFIG, lingerMs);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
         return new DefaultKafkaProducerFactory<>(config);
     }
 
     @Bean
     public ConsumerFactory<String, Object> consumerFactory() {
+        return new DefaultKafkaConsumerFactory<>(consumerConfig());
+    }
+
+    /**
+     * Settings shared by every consumer, the per-topic factories add group and fetch settings on top
+     */
+    private Map<String, Object> consumerConfig() {
         Map<String, Object> config = new HashMap<>();
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
-        config.put(ConsumerConfig.GROUP_ID_CONFIG, "event-processor-group");
+        config.put(ConsumerConfig.GROUP_ID_CONFIG, environment.getRequiredProperty("event-system.kafka.consumers.events.group-id"));
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
         config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, JsonDeserializer.class);
         config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
         config.put(JsonDeserializer.TRUSTED_PACKAGES, "*");
-        return new DefaultKafkaConsumerFactory<>(config);
+        return config;
+    }
+
+    /**
+     * One listener container factory per topic, each with its own consumer group, concurrency,
+     * max.poll.records and fetch settings from event-system.kafka.consumers.<topic>
+     * so replay backfills and retry storms never compete with live processing for consumers.
+     * The events and retry factories also carry the consumer mode (batch listener or async acks).
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> eventsKafkaListenerContainerFactory() {
+        return applyConsumerMode(listenerContainerFactory("events"));
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> retryKafkaListenerContainerFactory() {
+        return applyConsumerMode(listenerContainerFactory("retry"));
+    }
+
+    /**
+     * Containers of the retry delay-tier topics, created by TieredRetryTopics
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> retryTierKafkaListenerContainerFactory() {
+        return listenerContainerFactory("retry-tiers");
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> dlqKafkaListenerContainerFactory() {
+        return listenerContainerFactory("dlq");
+    }
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, Object> replayKafkaListenerContainerFactory() {
+        return listenerContainerFactory("replay");
+    }
+
+    private ConcurrentKafkaListenerContainerFactory<String, Object> listenerContainerFactory(String topic) {
+        String prefix = "event-system.kafka.consumers." + topic + ".";
+
+        Map<String, Object> config = consumerConfig();
+        config.put(ConsumerConfig.GROUP_ID_CONFIG, environment.getRequiredProperty(prefix + "group-id"));
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, environment.getRequiredProperty(prefix + "max-poll-records", Integer.class));
+        config.put(ConsumerConfig.FETCH_MIN_BYTES_CONFIG, environment.getRequiredProperty(prefix + "fetch-min-bytes", Integer.class));
+        config.put(ConsumerConfig.FETCH_MAX_WAIT_MS_CONFIG, environment.getRequiredProperty(prefix + "fetch-max-wait-ms", Integer.class));
+
+        ConcurrentKafkaListenerContainerFactory<String, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(new DefaultKafkaConsumerFactory<>(config));
+        factory.setConcurrency(environment.getRequiredProperty(prefix + "concurrency", Integer.class));
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        return factory;
+    }
+
+    /**
+     * batch: the listener gets every record of one poll and acknowledges them together
+     * parallel: acks come out of order from worker threads, async acks hold back the commit
+     * until every lower offset of the partition is acked
+     * record: asynchronous processors finish after the listener returns, so acks can be out of order as well
+     */
+    private ConcurrentKafkaListenerContainerFactory<String, Object> applyConsumerMode(ConcurrentKafkaListenerContainerFactory<String, Object> factory) {
+        switch (consumerMode) {
+            case "batch" -> factory.setBatchListener(true);
+            default -> factory.getContainerProperties().setAsyncAcks(true);
+        }
+        return factory;
     }
 
     @Bean
@@ -11,7 +11,7 @@ import org.springframework.stereotype.Service;
 @Slf4j
 public class DLQConsumer {
 
-    @KafkaListener(topics = "${event-system.kafka.topics.dlq}")
+    @KafkaListener(topics = "${event-system.kafka.topics.dlq}", containerFactory = "dlqKafkaListenerContainerFactory")
     public void consumeDLQEvent(DLQEventDTO dlqEvent, Acknowledgment ack){
         log.error("\uD83D\uDEA8 DLQ EVENT ALERT!!!");
         log.error("Event ID: {}", dlqEvent.getEventId());
@@ -0,0 +1,61 @@
+package com.example.event_replay_dlq_system.consumer;
+
+
+import com.example.event_replay_dlq_system.entity.Event;
+import com.example.event_replay_dlq_system.service.EventProcessingService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Batch mode replacement of EventProcessorConsumer and RetryEventConsumer
+ * Each call gets all records of one poll, offsets are committed once the whole batch is stored
+ * A batch that could not be stored is not acknowledged, it is redelivered from its first record
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "event-system.consumer.mode", havingValue = "batch")
+public class EventBatchConsumer {
+
+    private final EventProcessingService eventProcessingService;
+
+    @Value("${event-system.consumer.batch.redelivery-delay-ms}")
+    private long redeliveryDelayMs;
+
+    @Autowired
+    public EventBatchConsumer(EventProcessingService eventProcessingService) {
+        this.eventProcessingService = eventProcessingService;
+    }
+
+    @KafkaListener(topics = "${event-system.kafka.topics.events}", containerFactory = "eventsKafkaListenerContainerFactory")
+    public void consumeEvents(List<Event> events, Acknowledgment ack) {
+        log.info("Received batch of {} NEW events", events.size());
+        consume(events, ack, eventProcessingService::processBatch);
+    }
+
+    @KafkaListener(topics = "${event-system.kafka.topics.retry}", containerFactory = "retryKafkaListenerContainerFactory")
+    public void consumeRetryEvents(List<Event> events, Acknowledgment ack) {
+        log.info("Received batch of {} RETRY events", events.size());
+        consume(events, ack, eventProcessingService::processRetryBatch);
+    }
+
+    private void consume(List<Event> events, Acknowledgment ack, Consumer<List<Event>> processing) {
+        try {
+            processing.accept(events);
+        } catch (Exception e) {
+            // already processed records of the batch are skipped by their stored status on redelivery
+            log.error("Unexpected error while processing batch of {} events, redelivering it", events.size(), e);
+            ack.nack(0, Duration.ofMillis(redeliveryDelayMs));
+            return;
+        }
+        ack.acknowledge();
+    }
+}
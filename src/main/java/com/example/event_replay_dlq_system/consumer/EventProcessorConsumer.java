@@ -12,6 +12,7 @@ import com.example.event_replay_dlq_system.service.EventProcessingService;
 import com.example.event_replay_dlq_system.service.RedisLockService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.messaging.handler.annotation.Payload;
@@ -23,6 +24,7 @@ import java.util.Optional;
 
 @Slf4j
 @Service
+@ConditionalOnProperty(name = "event-system.consumer.mode", havingValue = "record", matchIfMissing = true)
 public class EventProcessorConsumer {
     private final EventProcessingService eventProcessingService;
 
@@ -32,7 +34,7 @@ public class EventProcessorConsumer {
         this.eventProcessingService = eventProcessingService;
     }
 
-    @KafkaListener(topics = "${event-system.kafka.topics.events}", groupId = "event-processor-group")
+    @KafkaListener(topics = "${event-system.kafka.topics.events}", containerFactory = "eventsKafkaListenerContainerFactory")
     public void consumeEvent(Event event, Acknowledgment ack) {
         log.info("------------------------------------------------------------");
         log.info("Received NEW event: {}", event.getEventId());
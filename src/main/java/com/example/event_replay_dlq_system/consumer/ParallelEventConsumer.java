@@ -0,0 +1,74 @@
+package com.example.event_replay_dlq_system.consumer;
+
+
+import com.example.event_replay_dlq_system.entity.Event;
+import com.example.event_replay_dlq_system.service.EventProcessingService;
+import com.example.event_replay_dlq_system.service.parallel.KeyOrderedExecutor;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Parallel mode replacement of EventProcessorConsumer and RetryEventConsumer
+ * The listener thread only dispatches, records of a partition run on virtual threads
+ * in order per key. Acks arrive out of order and the container (async acks)
+ * commits only the contiguous prefix of completed offsets.
+ */
+@Slf4j
+@Service
+@ConditionalOnProperty(name = "event-system.consumer.mode", havingValue = "parallel")
+public class ParallelEventConsumer {
+
+    private final EventProcessingService eventProcessingService;
+    private final KeyOrderedExecutor keyOrderedExecutor;
+    private final boolean orderByCorrelationId;
+
+    @Autowired
+    public ParallelEventConsumer(EventProcessingService eventProcessingService,
+                                 @Value("${event-system.consumer.parallel.max-in-flight}") int maxInFlight,
+                                 @Value("${event-system.consumer.parallel.ordering-key}") String orderingKey) {
+        this.eventProcessingService = eventProcessingService;
+        this.keyOrderedExecutor = new KeyOrderedExecutor(maxInFlight);
+        this.orderByCorrelationId = "correlation-id".equals(orderingKey);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        keyOrderedExecutor.close();
+    }
+
+    @KafkaListener(topics = "${event-system.kafka.topics.events}", containerFactory = "eventsKafkaListenerContainerFactory")
+    public void consumeEvent(Event event, Acknowledgment ack) throws InterruptedException {
+        log.info("Received NEW event: {}", event.getEventId());
+        dispatch(event, () -> eventProcessingService.processEvent(event, ack));
+    }
+
+    @KafkaListener(topics = "${event-system.kafka.topics.retry}", containerFactory = "retryKafkaListenerContainerFactory")
+    public void consumeEventRetry(Event event, Acknowledgment ack) throws InterruptedException {
+        log.info("Received RETRY event: {}", event.getEventId());
+        dispatch(event, () -> eventProcessingService.processRetryEvent(event, ack));
+    }
+
+    /**
+     * processEvent acknowledges the record itself once it is done,
+     * the task waits for it so asynchronous processors keep the per key order
+     */
+    private void dispatch(Event event, Supplier<CompletableFuture<Void>> processing) throws InterruptedException {
+        keyOrderedExecutor.submit(orderingKey(event), () -> processing.get().join());
+    }
+
+    private String orderingKey(Event event) {
+        if (orderByCorrelationId && event.getCorrelationId() != null) {
+            return event.getCorrelationId();
+        }
+        return event.getEventId();
+    }
+}
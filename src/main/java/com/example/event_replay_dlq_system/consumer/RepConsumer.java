@@ -1,47 +1,44 @@
 package com.example.event_replay_dlq_system.consumer;
 
-import com.example.event_replay_dlq_system.entity.DeadLetterQueue;
 import com.example.event_replay_dlq_system.entity.Event;
 import com.example.event_replay_dlq_system.entity.ReplayEvent;
 import com.example.event_replay_dlq_system.entity.ReplaySession;
 import com.example.event_replay_dlq_system.enums.DLQStatus;
 import com.example.event_replay_dlq_system.enums.ProcessingStatus;
 import com.example.event_replay_dlq_system.enums.ReplaySessionStatus;
-import com.example.event_replay_dlq_system.exception.DLQNotFoundException;
 import com.example.event_replay_dlq_system.exception.ProcessingException;
 import com.example.event_replay_dlq_system.exception.ReplaySessionNotFoundException;
 import com.example.event_replay_dlq_system.processor.EventProcessor;
+import com.example.event_replay_dlq_system.processor.ProcessorRegistry;
 import com.example.event_replay_dlq_system.repository.DeadLetterQueueRepository;
 import com.example.event_replay_dlq_system.repository.ReplayEventRepository;
 import com.example.event_replay_dlq_system.repository.ReplaySessionRepository;
 import com.example.event_replay_dlq_system.service.RedisLockService;
-import com.example.event_replay_dlq_system.service.ReplayService;
 import lombok.extern.slf4j.Slf4j;
-import org.hibernate.sql.Update;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 
 @Service
 @Slf4j
 public class RepConsumer {
 
-    private final List<EventProcessor> processors;
+    private final ProcessorRegistry processorRegistry;
     private final ReplayEventRepository replayEventRepository;
     private final ReplaySessionRepository replaySessionRepository;
-    private final ReplayService replayService;
     private final RedisLockService redisLockService;
     private final DeadLetterQueueRepository deadLetterQueueRepository;
 
-    public RepConsumer(List<EventProcessor> processors, ReplayEventRepository replayEventRepository, ReplaySessionRepository replaySessionRepository, ReplayService replayService, RedisLockService redisLockService, DeadLetterQueueRepository deadLetterQueueRepository) {
-        this.processors = processors;
+    public RepConsumer(ProcessorRegistry processorRegistry, ReplayEventRepository replayEventRepository, ReplaySessionRepository replaySessionRepository, RedisLockService redisLockService, DeadLetterQueueRepository deadLetterQueueRepository) {
+        this.processorRegistry = processorRegistry;
         this.replayEventRepository = replayEventRepository;
         this.replaySessionRepository = replaySessionRepository;
-        this.replayService = replayService;
         this.redisLockService = redisLockService;
         this.deadLetterQueueRepository = deadLetterQueueRepository;
     }
@@ -53,7 +50,7 @@ public class RepConsumer {
      * @param event
      * @param ack
      */
-    @KafkaListener(topics = "${event-system.kafka.topics.replay}")
+    @KafkaListener(topics = "${event-system.kafka.topics.replay}", containerFactory = "replayKafkaListenerContainerFactory")
     public void consumeReplayEvent(Event event, Acknowledgment ack) {
 
         log.info("------------------------------------------------------------");
@@ -63,31 +60,30 @@ public class RepConsumer {
 
             if (replayEvents.isEmpty()) {
                 log.warn("⚠️ No replay event entry found for: {}", event.getEventId());
-                ack.acknowledge();
-                return;
             }
             for (ReplayEvent replayEvent : replayEvents) {
                 if (replayEvent.getStatus() == ProcessingStatus.PENDING) {
                     processReplayEvent(event, replayEvent);
                 }
             }
-            ack.acknowledge();
         } catch (Exception e) {
             log.error("Unexpected error processing replay event {}{}", e.getMessage(), event.getEventId());
-            ack.acknowledge();
         }
 
-
         ack.acknowledge();
     }
 
+    /**
+     * Replays the event through every processor registered for its type,
+     * the replay event succeeds only if all of them succeed
+     *
+     * @param event       event
+     * @param replayEvent replay entry of the session
+     */
     private void processReplayEvent(Event event, ReplayEvent replayEvent) {
-        EventProcessor processor = processors.stream()
-                .filter(p -> p.canProcess(event.getEventType()))
-                .findFirst()
-                .orElse(null);
+        List<EventProcessor> eventProcessors = processorRegistry.processorsFor(event.getEventType());
 
-        if (processor == null) {
+        if (eventProcessors.isEmpty()) {
             log.error("No processor found for event type: {}", event.getEventType());
 
             replayEvent.setStatus(ProcessingStatus.FAILED);
@@ -95,11 +91,13 @@ public class RepConsumer {
             replayEvent.setProcessingTime(LocalDateTime.now());
             replayEventRepository.save(replayEvent);
 
+            updateReplaySessionStats(replayEvent);
+            updateDLQ(replayEvent);
+            checkAndCompleteSession(replayEvent.getSessionId());
+            return;
         }
 
-        assert processor != null;
-        String processorName = processor.getProcessorName();
-        log.info("Processor name: {}", processorName);
+        log.info("Processors: {}", eventProcessors.stream().map(EventProcessor::getProcessorName).toList());
 
         String lockKey = "replay:lock: " + event.getEventId() + ":" + replayEvent.getSessionId();
         boolean lockAcquired = redisLockService.acquireLock(lockKey, 300);
@@ -114,7 +112,7 @@ public class RepConsumer {
             replayEventRepository.save(replayEvent);
 
             log.info("Processing replay event (attempt {})", replayEvent.getReplayAttemptCount());
-            processor.process(event);
+            runProcessors(event, eventProcessors);
 
             replayEvent.setStatus(ProcessingStatus.SUCCESS);
             replayEvent.setProcessingTime(LocalDateTime.now());
@@ -133,84 +131,98 @@ public class RepConsumer {
         }
 
 
-        updateReplaySessionStats(replayEvent.getSessionId());
-        updateDLQ(replayEvent.getSessionId());
+        updateReplaySessionStats(replayEvent);
+        updateDLQ(replayEvent);
         checkAndCompleteSession(replayEvent.getSessionId());
 
     }
 
     /**
-     * Update the session statistics based on success and failed events
+     * Starts every processor through processAsync and waits for all of them,
+     * asynchronous processors overlap instead of running one after another
      *
-     * @param sessionId
+     * @throws ProcessingException the first processing failure
      */
-    private void updateReplaySessionStats(String sessionId) {
-        ReplaySession session = replaySessionRepository.findBySessionId(sessionId).orElseThrow(() -> new ReplaySessionNotFoundException("Session not found" + sessionId));
-
-        if (session == null) {
-            return;
+    private void runProcessors(Event event, List<EventProcessor> eventProcessors) throws ProcessingException {
+        List<CompletableFuture<Void>> runs = eventProcessors.stream()
+                .map(processor -> {
+                    try {
+                        return processor.processAsync(event).toCompletableFuture();
+                    } catch (Exception e) {
+                        return CompletableFuture.<Void>failedFuture(e);
+                    }
+                })
+                .toList();
+
+        for (CompletableFuture<Void> run : runs) {
+            try {
+                run.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof ProcessingException processingException) {
+                    throw processingException;
+                }
+                throw e;
+            }
         }
-        long success = replayEventRepository.countBySessionIdAndStatus(sessionId, ProcessingStatus.SUCCESS);
-        long failed = replayEventRepository.countBySessionIdAndStatus(sessionId, ProcessingStatus.FAILED);
-
-        session.setSuccessfulEvents((int) success);
-        session.setFailedEvents((int) failed);
-        session.setProcessedEvents((int) (success + failed));
-
-        replaySessionRepository.save(session);
-
-
-        log.debug("Session stats updated: {}/{} processed ({} success, {} failed)",
-                session.getProcessedEvents(), session.getTotalEvents(),
-                success, failed);
     }
 
+    /**
+     * Add the outcome of one replay event to the session counters
+     *
+     * @param replayEvent processed replay event
+     */
+    private void updateReplaySessionStats(ReplayEvent replayEvent) {
+        boolean success = replayEvent.getStatus() == ProcessingStatus.SUCCESS;
+        int updated = replaySessionRepository.incrementProgress(replayEvent.getSessionId(), success ? 1 : 0, success ? 0 : 1);
 
-    private void updateDLQ(String sessionId) {
-        List<ReplayEvent> event = replayEventRepository.findAllBySessionId(sessionId);
+        if (updated == 0) {
+            throw new ReplaySessionNotFoundException("Session not found" + replayEvent.getSessionId());
+        }
 
-        for (ReplayEvent re : event) {
-            DeadLetterQueue dlqEntry = deadLetterQueueRepository.findByEventId(re.getEventId())
-                    .orElseThrow(() -> new DLQNotFoundException("DLQ NOT FOUND with eventId" + re.getEventId()));
+        log.debug("Session stats updated: {} ({})", replayEvent.getSessionId(), replayEvent.getStatus());
+    }
 
-            if (re.getStatus().equals(ProcessingStatus.SUCCESS)) {
-                deadLetterQueueRepository.deleteByEventId(re.getEventId());
-            }
 
-            if (re.getStatus().equals(ProcessingStatus.FAILED)) {
-                dlqEntry.setDlqStatus(DLQStatus.ARCHIVED);
-                dlqEntry.setLastFailureTime(LocalDateTime.now());
-                dlqEntry.setTotalAttempts(dlqEntry.getTotalAttempts() + 1);
-                dlqEntry.setArchiveReason("Can not be processed");
-            }
+    /**
+     * Reconcile the DLQ entry of the event that was just replayed:
+     * a success removes it, a failure archives it.
+     * Events that were never in the DLQ match no row.
+     *
+     * @param replayEvent processed replay event
+     */
+    private void updateDLQ(ReplayEvent replayEvent) {
+        if (replayEvent.getStatus() == ProcessingStatus.SUCCESS) {
+            int deleted = deadLetterQueueRepository.deleteByEventId(replayEvent.getEventId());
+            log.debug("Removed {} DLQ entries for replayed event {}", deleted, replayEvent.getEventId());
         }
 
+        if (replayEvent.getStatus() == ProcessingStatus.FAILED) {
+            int archived = deadLetterQueueRepository.archiveByEventId(replayEvent.getEventId(), DLQStatus.ARCHIVED,
+                    LocalDateTime.now(), "Can not be processed");
+            log.debug("Archived {} DLQ entries for replayed event {}", archived, replayEvent.getEventId());
+        }
     }
 
 
     /**
-     * Complete the replay session if processed events exceeds total events
+     * Complete the replay session if processed events reached total events,
+     * decided by the conditional update so only one consumer completes it
      *
      * @param sessionId session
      */
     private void checkAndCompleteSession(String sessionId) {
 
-        ReplaySession session = replaySessionRepository.findBySessionId(sessionId).orElseThrow(() -> new ReplaySessionNotFoundException("Session not found" + sessionId));
-
-        if (session == null || session.getStatus() != ReplaySessionStatus.RUNNING) {
-            return;
-        }
-
-        if (session.getProcessedEvents() >= session.getTotalEvents()) {
-            replayService.completeReplaySession(sessionId);
-
-            log.info("🎉 Replay session completed: {} ({}/{} events processed, {} success, {} failed)",
-                    sessionId,
-                    session.getProcessedEvents(),
-                    session.getTotalEvents(),
-                    session.getSuccessfulEvents(),
-                    session.getFailedEvents()
-            );
+        int completed = replaySessionRepository.completeIfFinished(sessionId, ReplaySessionStatus.RUNNING, ReplaySessionStatus.COMPLETED, LocalDateTime.now());
+
+        if (completed == 1) {
+            replaySessionRepository.findBySessionId(sessionId).ifPresent(session ->
+                    log.info("🎉 Replay session completed: {} ({}/{} events processed, {} success, {} failed)",
+                            sessionId,
+                            session.getProcessedEvents(),
+                            session.getTotalEvents(),
+                            session.getSuccessfulEvents(),
+                            session.getFailedEvents()
+                    ));
         }
     }
 
@@ -5,12 +5,14 @@ import com.example.event_replay_dlq_system.entity.Event;
 import com.example.event_replay_dlq_system.service.EventProcessingService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 
 @Slf4j
 @Service
+@ConditionalOnProperty(name = "event-system.consumer.mode", havingValue = "record", matchIfMissing = true)
 public class RetryEventConsumer {
 
     private final EventProcessingService eventProcessingService;
@@ -20,10 +22,10 @@ public class RetryEventConsumer {
         this.eventProcessingService = eventProcessingService;
     }
 
-    @KafkaListener(topics = "${event-system.kafka.topics.retry}")
+    @KafkaListener(topics = "${event-system.kafka.topics.retry}", containerFactory = "retryKafkaListenerContainerFactory")
     public void consumeEventRetry(Event event, Acknowledgment ack) {
         log.info("----- retry -----");
         log.info("Received RETRY event: {}", event.getEventId());
-        eventProcessingService.processEvent(event, ack);
+        eventProcessingService.processRetryEvent(event, ack);
     }
 }
@@ -16,6 +16,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/api")
@@ -29,9 +30,18 @@ public class EventController {
     }
 
     @PostMapping("/events")
-    public ResponseEntity<EventPublishResponseDTO> publishEvent(@Valid @RequestBody EventPublishRequestDTO eventPublishRequestDTO) {
-        EventPublishResponseDTO eventPublishResponseDTO = eventPublisherService.publishEvent(eventPublishRequestDTO);
-        return new ResponseEntity<>(eventPublishResponseDTO, HttpStatus.CREATED);
+    public CompletableFuture<ResponseEntity<EventPublishResponseDTO>> publishEvent(@Valid @RequestBody EventPublishRequestDTO eventPublishRequestDTO) {
+        // the servlet thread is released while the broker ack is pending
+        return eventPublisherService.publishEvent(eventPublishRequestDTO)
+                .thenApply(response -> new ResponseEntity<>(response,
+                        "PUBLISHED".equals(response.getStatus()) ? HttpStatus.CREATED : HttpStatus.ACCEPTED));
+    }
+
+    @PostMapping("/events/batch")
+    public ResponseEntity<EventBatchPublishResponseDTO> publishEventBatch(@RequestBody List<EventPublishRequestDTO> eventPublishRequestDTOs) {
+        EventBatchPublishResponseDTO response = eventPublisherService.publishEventBatch(eventPublishRequestDTOs);
+        HttpStatus status = response.getRejected() == 0 ? HttpStatus.CREATED : HttpStatus.MULTI_STATUS;
+        return new ResponseEntity<>(response, status);
     }
 
     @GetMapping("/events")
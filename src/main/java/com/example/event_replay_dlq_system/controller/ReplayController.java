@@ -38,6 +38,27 @@ public class ReplayController {
         return ResponseEntity.ok(responseDTO);
     }
 
+    @PostMapping("/replay/sessions/{sessionId}/pause")
+    public ResponseEntity<ReplayProgressResponseDTO> pauseReplaySession(@PathVariable String sessionId) {
+        ReplaySession session = replayService.pauseReplaySession(sessionId);
+        var responseDTO = ReplayMapper.mapReplayProgressResponseDTO(session);
+        return ResponseEntity.ok(responseDTO);
+    }
+
+    @PostMapping("/replay/sessions/{sessionId}/resume")
+    public ResponseEntity<ReplayProgressResponseDTO> resumeReplaySession(@PathVariable String sessionId) {
+        ReplaySession session = replayService.resumeReplaySession(sessionId);
+        var responseDTO = ReplayMapper.mapReplayProgressResponseDTO(session);
+        return ResponseEntity.ok(responseDTO);
+    }
+
+    @PostMapping("/replay/sessions/{sessionId}/cancel")
+    public ResponseEntity<ReplayProgressResponseDTO> cancelReplaySession(@PathVariable String sessionId) {
+        ReplaySession session = replayService.cancelReplaySession(sessionId);
+        var responseDTO = ReplayMapper.mapReplayProgressResponseDTO(session);
+        return ResponseEntity.ok(responseDTO);
+    }
+
     @GetMapping("/replay/progress/{sessionId}")
     public ResponseEntity<ReplayProgressResponseDTO> getReplayProgress(@PathVariable String sessionId) {
         ReplayProgressResponseDTO progress = replayService.getReplayProgress(sessionId);
@@ -49,10 +70,5 @@ public class ReplayController {
        return replayService.getAllReplayEvents();
     }
 
-
-
-    // TODO: Pause Replay Session Controller
-    // TODO: Resume Replay Session Controller
-
 }
 
@@ -0,0 +1,29 @@
+package com.example.event_replay_dlq_system.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+
+/**
+ * Outcome of one event of a batch publish request
+ * index of the event in the request
+ * eventId if accepted
+ * "ACCEPTED" or "REJECTED"
+ * validation errors of rejected events
+ */
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventBatchItemResultDTO {
+    private int index;
+    private String eventId;
+    private String status;
+    private String message;
+    private List<String> errors;
+}
@@ -0,0 +1,29 @@
+package com.example.event_replay_dlq_system.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+
+/**
+ * Returns the result of a batch publish request
+ * counts of accepted and rejected events
+ * per event results in request order
+ * timestamp
+ */
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class EventBatchPublishResponseDTO {
+    private int total;
+    private int accepted;
+    private int rejected;
+    private List<EventBatchItemResultDTO> results;
+    private LocalDateTime timestamp;
+}
@@ -11,7 +11,7 @@ import java.time.LocalDateTime;
 /**
  * Returns that event response DTO
  * Includes eventId,
- * processing status information "PUBLISHED" or "FAILED"
+ * processing status information "PUBLISHED" (acked by kafka) or "ACCEPTED" (stored, left to the outbox relay)
  * success/error message
  * timestamp
  */
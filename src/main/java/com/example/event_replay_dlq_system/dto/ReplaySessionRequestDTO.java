@@ -4,6 +4,7 @@ import com.example.event_replay_dlq_system.entity.EventFilter;
 import io.netty.util.internal.AppendableCharSequence;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
 import lombok.*;
 
 
@@ -23,4 +24,10 @@ public class ReplaySessionRequestDTO {
 
     private String createdBy;
 
+    /**
+     * Upper bound of the replay publish rate, the default rate is used when empty
+     */
+    @Positive
+    private Integer targetEventsPerSecond;
+
 }
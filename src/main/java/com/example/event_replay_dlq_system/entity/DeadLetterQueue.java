@@ -10,6 +10,7 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "dead_letter_queue", indexes = {
         @Index(name = "idx_dlq_status", columnList = "dlqStatus"),
+        @Index(name = "idx_dlq_event_id", columnList = "event_id"),
         @Index(name = "idx_processor_name", columnList = "processor_name"),
         @Index(name = "idx_last_failure_time", columnList = "last_failure_time")
 })
@@ -21,7 +22,8 @@ import java.time.LocalDateTime;
 public class DeadLetterQueue extends BaseEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "dead_letter_queue_seq")
+    @SequenceGenerator(name = "dead_letter_queue_seq", sequenceName = "dead_letter_queue_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "event_id", nullable = false, length = 255)
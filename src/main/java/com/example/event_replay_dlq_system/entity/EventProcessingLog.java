@@ -29,7 +29,8 @@ import java.time.LocalDateTime;
 public class EventProcessingLog extends BaseEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "event_processing_log_seq")
+    @SequenceGenerator(name = "event_processing_log_seq", sequenceName = "event_processing_log_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "event_id", nullable = false)
@@ -0,0 +1,55 @@
+package com.example.event_replay_dlq_system.entity;
+
+
+import com.example.event_replay_dlq_system.enums.OutboxStatus;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Row of the transactional outbox
+ * Written in the same transaction as the event, drained to kafka by the outbox relay
+ */
+@Entity
+@Table(name = "event_outbox", indexes = {
+        @Index(name = "idx_outbox_status_partition_id", columnList = "status, partition_no, id"),
+        @Index(name = "idx_outbox_sent_at", columnList = "sent_at")
+})
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutboxEvent extends BaseEntity {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "event_outbox_seq")
+    @SequenceGenerator(name = "event_outbox_seq", sequenceName = "event_outbox_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "event_id", nullable = false, length = 255)
+    private String eventId;
+
+    @Column(name = "partition_no", nullable = false)
+    private int partitionNo;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private OutboxStatus status;
+
+    @Column(name = "attempt_count", nullable = false)
+    private int attemptCount;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+
+    /**
+     * Set while a relay has claimed the row, after it other relays may claim it again
+     */
+    @Column(name = "lease_until")
+    private LocalDateTime leaseUntil;
+}
@@ -15,6 +15,7 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "replay_events", indexes = {
         @Index(name = "idx_session_status", columnList = "session_id, status"),
+        @Index(name = "idx_session_id_id", columnList = "session_id, id"),
         @Index(name = "idx_event_id", columnList = "event_id")
 })
 @Getter
@@ -24,7 +25,8 @@ import java.time.LocalDateTime;
 public class ReplayEvent extends BaseEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "replay_events_seq")
+    @SequenceGenerator(name = "replay_events_seq", sequenceName = "replay_events_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "session_id", nullable = false, length = 255)
@@ -24,7 +24,8 @@ import java.time.LocalDateTime;
 public class ReplaySession extends BaseEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "replay_sessions_seq")
+    @SequenceGenerator(name = "replay_sessions_seq", sequenceName = "replay_sessions_seq", allocationSize = 50)
     private Long id;
 
     @Column(name = "session_id", unique = true, nullable = false, length = 255)
@@ -56,6 +57,9 @@ public class ReplaySession extends BaseEntity {
     @Column(name = "failed_events", nullable = false)
     private int failedEvents = 0;
 
+    @Column(name = "target_events_per_second")
+    private Integer targetEventsPerSecond;
+
     @Column(name = "created_by", length = 100)
     private String createdBy;
 
@@ -64,4 +68,10 @@ public class ReplaySession extends BaseEntity {
 
     @Column(name = "completed_at")
     private LocalDateTime completedAt;
+
+    /**
+     * Highest replay_events.id already published for this session, replay resumes after it
+     */
+    @Column(name = "last_published_replay_event_id")
+    private Long lastPublishedReplayEventId;
 }
\ No newline at end of file
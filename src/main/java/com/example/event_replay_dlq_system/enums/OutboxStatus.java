@@ -0,0 +1,6 @@
+package com.example.event_replay_dlq_system.enums;
+
+public enum OutboxStatus {
+    PENDING,
+    SENT
+}
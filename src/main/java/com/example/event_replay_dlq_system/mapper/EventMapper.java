@@ -9,11 +9,14 @@ import com.example.event_replay_dlq_system.enums.ProcessingStatus;
 import lombok.Builder;
 
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.UUID;
 
 
 public class EventMapper {
 
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+
     /**
      * convert incoming request to event entity
      *
@@ -60,7 +63,7 @@ public class EventMapper {
         eventProcessingLog.setProcessorName(processorName);
         eventProcessingLog.setStatus(processingStatus);
         eventProcessingLog.setAttemptCount(0);
-        eventProcessingLog.setMaxAttempts(3);
+        eventProcessingLog.setMaxAttempts(DEFAULT_MAX_ATTEMPTS);
 
         return eventProcessingLog;
 
@@ -73,6 +76,21 @@ public class EventMapper {
      * @return current situation of event
      */
     public static EventPublishResponseDTO mapToEventPublishResponseDTO(Event event) {
+        return EventPublishResponseDTO.builder()
+                .eventId(event.getEventId())
+                .status("ACCEPTED")
+                .message("Event accepted for publishing")
+                .timestamp(LocalDateTime.now())
+                .build();
+    }
+
+    /**
+     * Convert Event acknowledged by the broker to the response
+     *
+     * @param event Event
+     * @return published response
+     */
+    public static EventPublishResponseDTO mapToPublishedResponseDTO(Event event) {
         return EventPublishResponseDTO.builder()
                 .eventId(event.getEventId())
                 .status("PUBLISHED")
@@ -82,6 +100,25 @@ public class EventMapper {
     }
 
 
+    public static EventBatchItemResultDTO toAcceptedBatchItem(int index, Event event) {
+        return EventBatchItemResultDTO.builder()
+                .index(index)
+                .eventId(event.getEventId())
+                .status("ACCEPTED")
+                .message("Event accepted for publishing")
+                .build();
+    }
+
+    public static EventBatchItemResultDTO toRejectedBatchItem(int index, List<String> errors) {
+        return EventBatchItemResultDTO.builder()
+                .index(index)
+                .status("REJECTED")
+                .message("Validation failed")
+                .errors(errors)
+                .build();
+    }
+
+
     public static EventProcessingLogResponse toProcessingLogResponse(EventProcessingLog log) {
         return EventProcessingLogResponse.builder()
                 .eventId(log.getEventId())
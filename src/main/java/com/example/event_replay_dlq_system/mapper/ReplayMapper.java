@@ -14,10 +14,12 @@ public class ReplayMapper {
                 .processedEvents(replaySession.getProcessedEvents())
                 .successfulEvents(replaySession.getSuccessfulEvents())
                 .failedEvents(replaySession.getFailedEvents())
-                .pendingEvents(replaySession.getTotalEvents())
-                .progressPercentage(0.0)
-                .startedAt(null)
-                .endedAt(null)
+                .pendingEvents(Math.max(0, replaySession.getTotalEvents() - replaySession.getProcessedEvents()))
+                .progressPercentage(replaySession.getTotalEvents() > 0
+                        ? (replaySession.getProcessedEvents() * 100.0) / replaySession.getTotalEvents()
+                        : 0.0)
+                .startedAt(replaySession.getStartedAt())
+                .endedAt(replaySession.getCompletedAt())
                 .build();
     }
 }
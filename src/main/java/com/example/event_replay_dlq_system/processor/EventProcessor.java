@@ -4,8 +4,65 @@ package com.example.event_replay_dlq_system.processor;
 import com.example.event_replay_dlq_system.entity.Event;
 import com.example.event_replay_dlq_system.exception.ProcessingException;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 public interface EventProcessor {
     void process(Event event) throws ProcessingException;
     String getProcessorName();
-    boolean canProcess(String eventType);
+
+    /**
+     * Event types routed to this processor, read once by the ProcessorRegistry at startup
+     */
+    Set<String> supportedEventTypes();
+
+    default boolean canProcess(String eventType) {
+        return supportedEventTypes().contains(eventType);
+    }
+
+    /**
+     * Non-blocking variant, processors waiting on a downstream system override it to free the calling thread
+     * The default runs process(event) on the calling thread and returns a completed stage
+     *
+     * @param event event
+     * @return completes when the event is processed, a ProcessingException failure counts as a processing failure
+     */
+    default CompletionStage<Void> processAsync(Event event) {
+        try {
+            process(event);
+            return CompletableFuture.completedFuture(null);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Bulk variant, used for several events of this processor in one poll when supportsBatch() is true
+     * The default processes the events one by one
+     *
+     * @param events events routed to this processor
+     * @return failures by eventId, events without an entry succeeded
+     */
+    default Map<String, ProcessingException> processBatch(List<Event> events) {
+        Map<String, ProcessingException> failures = new LinkedHashMap<>();
+        for (Event event : events) {
+            try {
+                process(event);
+            } catch (ProcessingException e) {
+                failures.put(event.getEventId(), e);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * @return true if processBatch is backed by a bulk downstream call
+     */
+    default boolean supportsBatch() {
+        return false;
+    }
 }
@@ -0,0 +1,59 @@
+package com.example.event_replay_dlq_system.processor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * Routing table from event type to processors, built once at startup
+ * Lookups are a single hash map get instead of asking every processor
+ */
+@Slf4j
+@Component
+public class ProcessorRegistry {
+
+    private final Map<String, List<EventProcessor>> processorsByEventType;
+    private final Map<String, EventProcessor> processorsByName;
+
+    @Autowired
+    public ProcessorRegistry(List<EventProcessor> processors) {
+        Map<String, List<EventProcessor>> byEventType = new HashMap<>();
+        Map<String, EventProcessor> byName = new HashMap<>();
+
+        for (EventProcessor processor : processors) {
+            if (byName.putIfAbsent(processor.getProcessorName(), processor) != null) {
+                throw new IllegalStateException("Duplicate processor name " + processor.getProcessorName());
+            }
+            for (String eventType : processor.supportedEventTypes()) {
+                byEventType.computeIfAbsent(eventType, type -> new ArrayList<>()).add(processor);
+            }
+        }
+
+        byEventType.replaceAll((type, list) -> List.copyOf(list));
+        this.processorsByEventType = Map.copyOf(byEventType);
+        this.processorsByName = Map.copyOf(byName);
+
+        processorsByEventType.forEach((type, list) -> log.info("Event type {} -> {}", type,
+                list.stream().map(EventProcessor::getProcessorName).toList()));
+    }
+
+    /**
+     * @param eventType type of event
+     * @return processors for the type, empty if none
+     */
+    public List<EventProcessor> processorsFor(String eventType) {
+        if (eventType == null) {
+            return List.of();
+        }
+        return processorsByEventType.getOrDefault(eventType, List.of());
+    }
+
+    public Optional<EventProcessor> findByName(String processorName) {
+        if (processorName == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(processorsByName.get(processorName));
+    }
+}
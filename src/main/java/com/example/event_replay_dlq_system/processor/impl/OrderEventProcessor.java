@@ -12,6 +12,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -29,6 +30,8 @@ import java.util.concurrent.ConcurrentMap;
 @Service
 public class OrderEventProcessor implements EventProcessor {
 
+    private static final Set<String> EVENT_TYPES = Set.of("OrderCreated", "OrderCancelled", "OrderUpdated");
+
     private final ObjectMapper objectMapper;
     private Map<String, Integer> attemptTracker = new ConcurrentHashMap<>();
 
@@ -37,10 +40,8 @@ public class OrderEventProcessor implements EventProcessor {
     }
 
     @Override
-    public boolean canProcess(String eventType) {
-        return eventType.equals("OrderCreated") ||
-                eventType.equals("OrderCancelled") ||
-                eventType.equals("OrderUpdated");
+    public Set<String> supportedEventTypes() {
+        return EVENT_TYPES;
     }
 
     @Override
@@ -8,9 +8,20 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
 @Slf4j
 @Service
 public class PaymentEventProcessor implements EventProcessor {
+    private static final Set<String> EVENT_TYPES = Set.of("PaymentProcessed", "PaymentCancelled");
+
     private final ObjectMapper objectMapper;
 
     public PaymentEventProcessor(ObjectMapper objectMapper) {
@@ -23,8 +34,87 @@ public class PaymentEventProcessor implements EventProcessor {
             log.warn("Unsupported event type {}", event.getEventType());
             return;
         }
+        Payment payment = readPayment(event);
+        try {
+            /*
+                SIMULATING PAYMENT PROCESS
+             */
+            log.info("Payment status updated for payment {} with an amount of {}", payment.paymentId(), payment.amount());
+            Thread.sleep(200);
+            log.info("Successfully processed payment Event {}", payment.paymentId());
+
+        } catch (Exception ex) {
+            log.error("Unexpected error for Payment Event {}", event, ex);
+            throw new ProcessingException("Unexpected error for Payment Event");
+        }
+    }
+
+    /**
+     * The simulated payment call completes on a timer instead of sleeping on the caller thread
+     */
+    @Override
+    public CompletionStage<Void> processAsync(Event event) {
+        if (!canProcess(event.getEventType())) {
+            log.warn("Unsupported event type {}", event.getEventType());
+            return CompletableFuture.completedFuture(null);
+        }
+        Payment payment;
+        try {
+            payment = readPayment(event);
+        } catch (ProcessingException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+
+        log.info("Payment status updated for payment {} with an amount of {}", payment.paymentId(), payment.amount());
+        return CompletableFuture.runAsync(
+                () -> log.info("Successfully processed payment Event {}", payment.paymentId()),
+                CompletableFuture.delayedExecutor(200, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Validates every payment on its own, then confirms all valid payments with one simulated call
+     */
+    @Override
+    public Map<String, ProcessingException> processBatch(List<Event> events) {
+        Map<String, ProcessingException> failures = new LinkedHashMap<>();
+        List<Payment> payments = new ArrayList<>();
+        for (Event event : events) {
+            if (!canProcess(event.getEventType())) {
+                log.warn("Unsupported event type {}", event.getEventType());
+                continue;
+            }
+            try {
+                payments.add(readPayment(event));
+            } catch (ProcessingException ex) {
+                failures.put(event.getEventId(), ex);
+            }
+        }
+        if (payments.isEmpty()) {
+            return failures;
+        }
+
         try {
+            /*
+                SIMULATING BULK PAYMENT PROCESS
+             */
+            log.info("Payment status updated for {} payments", payments.size());
+            Thread.sleep(200);
+            log.info("Successfully processed payment Events {}", payments.stream().map(Payment::paymentId).toList());
+
+        } catch (Exception ex) {
+            log.error("Unexpected error for Payment batch of {} events", payments.size(), ex);
+            payments.forEach(payment -> failures.put(payment.eventId(), new ProcessingException("Unexpected error for Payment Event")));
+        }
+        return failures;
+    }
+
+    @Override
+    public boolean supportsBatch() {
+        return true;
+    }
 
+    private Payment readPayment(Event event) throws ProcessingException {
+        try {
             JsonNode paymentJson = objectMapper.readTree(event.getPayload());
             double paymentAmount = paymentJson.get("amount").asDouble();
             String paymentMethod = paymentJson.get("payment_method").asText();
@@ -36,13 +126,7 @@ public class PaymentEventProcessor implements EventProcessor {
             if (paymentAmount > 5000) {
                 throw new ProcessingException("Payment amount exceeds 5000");
             }
-
-            /*
-                SIMULATING PAYMENT PROCESS
-             */
-            log.info("Payment status updated for payment {} with an amount of {}", paymentId, paymentAmount);
-            Thread.sleep(200);
-            log.info("Successfully processed payment Event {}", paymentId);
+            return new Payment(event.getEventId(), paymentId, paymentAmount);
 
         } catch (ProcessingException ex) {
             log.error("Processing payment event failed {}", ex.getMessage());
@@ -53,15 +137,17 @@ public class PaymentEventProcessor implements EventProcessor {
         }
     }
 
+    private record Payment(String eventId, String paymentId, double amount) {
+    }
+
     @Override
     public String getProcessorName() {
         return "PaymentEventProcessor";
     }
 
     @Override
-    public boolean canProcess(String eventType) {
-        return eventType.equals("PaymentProcessed") ||
-                eventType.equals("PaymentCancelled");
+    public Set<String> supportedEventTypes() {
+        return EVENT_TYPES;
     }
 }
 
@@ -2,6 +2,7 @@ package com.example.event_replay_dlq_system.repository;
 
 import com.example.event_replay_dlq_system.entity.DeadLetterQueue;
 import com.example.event_replay_dlq_system.enums.DLQStatus;
+import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -17,7 +18,25 @@ public interface DeadLetterQueueRepository extends JpaRepository<DeadLetterQueue
 
     Optional<DeadLetterQueue> findByEventId(String eventId);
 
-    void deleteByEventId(String eventId);
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM DeadLetterQueue d WHERE d.eventId = :eventId")
+    int deleteByEventId(@Param("eventId") String eventId);
+
+    /**
+     * Archive the DLQ entry of an event that failed again, without loading it
+     *
+     * @return number of archived entries, 0 if the event was never in the DLQ
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE DeadLetterQueue d SET d.dlqStatus = :status, d.lastFailureTime = :failureTime, " +
+            "d.totalAttempts = d.totalAttempts + 1, d.archiveReason = :archiveReason " +
+            "WHERE d.eventId = :eventId")
+    int archiveByEventId(@Param("eventId") String eventId,
+                         @Param("status") DLQStatus status,
+                         @Param("failureTime") LocalDateTime failureTime,
+                         @Param("archiveReason") String archiveReason);
 
     @Modifying
     @Query("DELETE FROM DeadLetterQueue d WHERE d.approximateRetentionTime < :cutoff")
@@ -4,13 +4,55 @@ import aj.org.objectweb.asm.commons.Remapper;
 import com.example.event_replay_dlq_system.entity.Event;
 import com.example.event_replay_dlq_system.entity.EventProcessingLog;
 import com.example.event_replay_dlq_system.enums.ProcessingStatus;
+import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
-public interface EventProcessingLogRepository extends JpaRepository<EventProcessingLog, Long> {
+public interface EventProcessingLogRepository extends JpaRepository<EventProcessingLog, Long>, EventProcessingLogRepositoryCustom {
     List<EventProcessingLog> getByEventId(String eventID);
 
     Optional<EventProcessingLog> getByEventIdAndProcessorName(String eventId, String processorName);
+
+    /**
+     * Claim an (event, processor) pair for processing in one statement
+     * Creates the log as PROCESSING, or moves an existing one to PROCESSING unless it is
+     * SUCCESS, DLQ or PROCESSING by a claim that is not stale yet, relying on uk_event_processor
+     *
+     * @return attempt count of the claim, empty if the pair is done or owned by another consumer
+     */
+    @Transactional
+    @Query(value = "INSERT INTO event_processing_log " +
+            "(id, event_id, processor_name, status, attempt_count, max_attempts, processing_start_time, created_at, updated_at) " +
+            "VALUES (nextval('event_processing_log_seq'), :eventId, :processorName, 'PROCESSING', 1, :maxAttempts, :now, :now, :now) " +
+            "ON CONFLICT (event_id, processor_name) DO UPDATE SET status = 'PROCESSING', " +
+            "attempt_count = event_processing_log.attempt_count + 1, processing_start_time = :now, updated_at = :now " +
+            "WHERE event_processing_log.status NOT IN ('SUCCESS', 'DLQ', 'PROCESSING') " +
+            "OR (event_processing_log.status = 'PROCESSING' AND event_processing_log.processing_start_time < :staleBefore) " +
+            "RETURNING attempt_count", nativeQuery = true)
+    Optional<Integer> claim(@Param("eventId") String eventId,
+                            @Param("processorName") String processorName,
+                            @Param("maxAttempts") int maxAttempts,
+                            @Param("now") LocalDateTime now,
+                            @Param("staleBefore") LocalDateTime staleBefore);
+
+    /**
+     * Move a log from one status to another only if it is still in the expected status
+     *
+     * @return 1 if moved, 0 if the status changed in the meantime
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE EventProcessingLog l SET l.status = :status, l.processingEndTime = :endTime, l.updatedAt = :endTime " +
+            "WHERE l.eventId = :eventId AND l.processorName = :processorName AND l.status = :expected")
+    int transition(@Param("eventId") String eventId,
+                   @Param("processorName") String processorName,
+                   @Param("expected") ProcessingStatus expected,
+                   @Param("status") ProcessingStatus status,
+                   @Param("endTime") LocalDateTime endTime);
 }
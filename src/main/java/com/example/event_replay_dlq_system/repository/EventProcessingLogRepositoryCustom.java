@@ -0,0 +1,24 @@
+package com.example.event_replay_dlq_system.repository;
+
+import com.example.event_replay_dlq_system.entity.EventProcessingLog;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface EventProcessingLogRepositoryCustom {
+
+    /**
+     * Load the logs of many (event, processor) pairs
+     * in a single WHERE (event_id, processor_name) IN (...) query
+     *
+     * @param keys pairs to load
+     * @return logs that exist, in no particular order
+     */
+    List<EventProcessingLog> findAllByKeys(Collection<LogKey> keys);
+
+    record LogKey(String eventId, String processorName) {
+        public static LogKey of(EventProcessingLog log) {
+            return new LogKey(log.getEventId(), log.getProcessorName());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.event_replay_dlq_system.repository;
+
+import com.example.event_replay_dlq_system.entity.EventProcessingLog;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+
+import java.util.Collection;
+import java.util.List;
+
+public class EventProcessingLogRepositoryCustomImpl implements EventProcessingLogRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<EventProcessingLog> findAllByKeys(Collection<LogKey> keys) {
+        if (keys.isEmpty()) {
+            return List.of();
+        }
+
+        StringBuilder sql = new StringBuilder("SELECT * FROM event_processing_log WHERE (event_id, processor_name) IN (");
+        int i = 0;
+        for (LogKey ignored : keys) {
+            sql.append(i == 0 ? "" : ", ").append("(:eventId").append(i).append(", :processorName").append(i).append(")");
+            i++;
+        }
+        sql.append(")");
+
+        Query query = entityManager.createNativeQuery(sql.toString(), EventProcessingLog.class);
+        i = 0;
+        for (LogKey key : keys) {
+            query.setParameter("eventId" + i, key.eventId());
+            query.setParameter("processorName" + i, key.processorName());
+            i++;
+        }
+
+        return query.getResultList();
+    }
+}
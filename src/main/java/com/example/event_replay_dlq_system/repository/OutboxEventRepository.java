@@ -0,0 +1,54 @@
+package com.example.event_replay_dlq_system.repository;
+
+import com.example.event_replay_dlq_system.entity.OutboxEvent;
+import com.example.event_replay_dlq_system.enums.OutboxStatus;
+import jakarta.transaction.Transactional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * Claims the oldest pending rows of the given partitions created before the cutoff in one short transaction
+     * Rows leased by another relay, or locked by a concurrent claim, are skipped instead of waited on
+     *
+     * @return claimed rows, leased until leaseUntil
+     */
+    @Transactional
+    @Query(value = "UPDATE event_outbox SET lease_until = :leaseUntil WHERE id IN (" +
+            "SELECT id FROM event_outbox WHERE status = 'PENDING' AND partition_no IN (:partitions) " +
+            "AND created_at < :createdBefore AND (lease_until IS NULL OR lease_until < :now) " +
+            "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED) RETURNING *", nativeQuery = true)
+    List<OutboxEvent> claimPendingBatch(@Param("partitions") Collection<Integer> partitions,
+                                        @Param("createdBefore") LocalDateTime createdBefore,
+                                        @Param("now") LocalDateTime now,
+                                        @Param("leaseUntil") LocalDateTime leaseUntil,
+                                        @Param("limit") int limit);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxEvent o SET o.status = :status, o.sentAt = :sentAt, o.attemptCount = o.attemptCount + 1, " +
+            "o.leaseUntil = null WHERE o.id IN :ids")
+    int markSent(@Param("ids") Collection<Long> ids,
+                 @Param("status") OutboxStatus status,
+                 @Param("sentAt") LocalDateTime sentAt);
+
+    /**
+     * Gives the claim of unacked rows up, the next relay run claims them again
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE OutboxEvent o SET o.attemptCount = o.attemptCount + 1, o.lastError = :error, o.leaseUntil = null " +
+            "WHERE o.id IN :ids")
+    int markFailed(@Param("ids") Collection<Long> ids, @Param("error") String error);
+
+    @Modifying
+    @Query("DELETE FROM OutboxEvent o WHERE o.status = :status AND o.sentAt < :cutoff")
+    int deleteSentBefore(@Param("status") OutboxStatus status, @Param("cutoff") LocalDateTime cutoff);
+}
@@ -2,14 +2,19 @@ package com.example.event_replay_dlq_system.repository;
 
 import com.example.event_replay_dlq_system.entity.ReplayEvent;
 import com.example.event_replay_dlq_system.enums.ProcessingStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import java.util.List;
 
-public interface ReplayEventRepository extends JpaRepository<ReplayEvent, Long> {
+public interface ReplayEventRepository extends JpaRepository<ReplayEvent, Long>, ReplayEventRepositoryCustom {
 
     List<ReplayEvent> findBySessionIdAndStatus(String sessionId, ProcessingStatus processingStatus);
 
+    List<ReplayEvent> findBySessionIdAndIdGreaterThanOrderByIdAsc(String sessionId, Long id, Limit limit);
+
+    boolean existsBySessionIdAndIdGreaterThan(String sessionId, Long id);
+
     long countBySessionIdAndStatus(String sessionId, ProcessingStatus status);
 
     List<ReplayEvent> findByEventId(String eventId);
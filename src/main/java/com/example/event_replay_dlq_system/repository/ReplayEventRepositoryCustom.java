@@ -0,0 +1,16 @@
+package com.example.event_replay_dlq_system.repository;
+
+import com.example.event_replay_dlq_system.entity.EventFilter;
+
+public interface ReplayEventRepositoryCustom {
+
+    /**
+     * Write a PENDING replay event for every event matching the filter,
+     * in a single INSERT ... SELECT executed by the database
+     *
+     * @param sessionId replay session
+     * @param filter    session filter
+     * @return number of replay events written
+     */
+    int insertSessionMembers(String sessionId, EventFilter filter);
+}
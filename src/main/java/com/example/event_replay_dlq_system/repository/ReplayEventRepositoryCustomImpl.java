@@ -0,0 +1,40 @@
+package com.example.event_replay_dlq_system.repository;
+
+import com.example.event_replay_dlq_system.entity.EventFilter;
+import com.example.event_replay_dlq_system.enums.ProcessingStatus;
+import com.example.event_replay_dlq_system.specification.EventSpecification;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.transaction.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ReplayEventRepositoryCustomImpl implements ReplayEventRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public int insertSessionMembers(String sessionId, EventFilter filter) {
+        Map<String, Object> parameters = new HashMap<>();
+        String sql = "INSERT INTO replay_events " +
+                "(id, session_id, event_id, processor_name, status, replay_attempt_count, created_at, updated_at) " +
+                "SELECT nextval('replay_events_seq'), :sessionId, e.event_id, :processorName, :status, 0, :now, :now " +
+                "FROM events e" +
+                EventSpecification.toSqlWhereClause(filter, parameters) +
+                " ORDER BY e.id";
+
+        Query query = entityManager.createNativeQuery(sql);
+        query.setParameter("sessionId", sessionId);
+        query.setParameter("processorName", "replay-processor");
+        query.setParameter("status", ProcessingStatus.PENDING.name());
+        query.setParameter("now", LocalDateTime.now());
+        parameters.forEach(query::setParameter);
+
+        return query.executeUpdate();
+    }
+}
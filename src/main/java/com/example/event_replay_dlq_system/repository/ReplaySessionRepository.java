@@ -1,10 +1,95 @@
 package com.example.event_replay_dlq_system.repository;
 
 import com.example.event_replay_dlq_system.entity.ReplaySession;
+import com.example.event_replay_dlq_system.enums.ReplaySessionStatus;
+import jakarta.transaction.Transactional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface ReplaySessionRepository extends JpaRepository<ReplaySession, Long> {
     Optional<ReplaySession> findBySessionId(String sessionId);
+
+    List<ReplaySession> findByStatus(ReplaySessionStatus status);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ReplaySession r SET r.lastPublishedReplayEventId = :lastPublishedReplayEventId WHERE r.sessionId = :sessionId")
+    void updateCheckpoint(@Param("sessionId") String sessionId, @Param("lastPublishedReplayEventId") Long lastPublishedReplayEventId);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ReplaySession r SET r.status = :status WHERE r.sessionId = :sessionId")
+    void updateStatus(@Param("sessionId") String sessionId, @Param("status") ReplaySessionStatus status);
+
+    /**
+     * Compare-and-set of the status, only one caller moves the session out of an expected status
+     *
+     * @return 1 if the status was changed, 0 if the session was not in one of the expected statuses
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ReplaySession r SET r.status = :status WHERE r.sessionId = :sessionId AND r.status IN :expected")
+    int updateStatusIfIn(@Param("sessionId") String sessionId,
+                         @Param("expected") Collection<ReplaySessionStatus> expected,
+                         @Param("status") ReplaySessionStatus status);
+
+    /**
+     * Move a CREATED session to RUNNING, the progress counters are left to the consumers
+     *
+     * @return 1 for the single caller that started the session, 0 otherwise
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ReplaySession r SET r.status = :running, r.startedAt = :startedAt " +
+            "WHERE r.sessionId = :sessionId AND r.status = :created")
+    int startIfCreated(@Param("sessionId") String sessionId,
+                       @Param("created") ReplaySessionStatus created,
+                       @Param("running") ReplaySessionStatus running,
+                       @Param("startedAt") LocalDateTime startedAt);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ReplaySession r SET r.totalEvents = :totalEvents WHERE r.sessionId = :sessionId")
+    void updateTotalEvents(@Param("sessionId") String sessionId, @Param("totalEvents") int totalEvents);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE ReplaySession r SET r.status = :status, r.completedAt = :completedAt WHERE r.sessionId = :sessionId")
+    void updateCompletion(@Param("sessionId") String sessionId,
+                          @Param("status") ReplaySessionStatus status,
+                          @Param("completedAt") LocalDateTime completedAt);
+
+    /**
+     * Count one processed replay event without reading the session or recounting its replay events
+     *
+     * @return number of updated sessions
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ReplaySession r SET r.processedEvents = r.processedEvents + 1, " +
+            "r.successfulEvents = r.successfulEvents + :successful, " +
+            "r.failedEvents = r.failedEvents + :failed " +
+            "WHERE r.sessionId = :sessionId")
+    int incrementProgress(@Param("sessionId") String sessionId, @Param("successful") int successful, @Param("failed") int failed);
+
+    /**
+     * Move a RUNNING session to COMPLETED once its processed counter has reached the total
+     *
+     * @return 1 for the single caller that completed the session, 0 otherwise
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE ReplaySession r SET r.status = :completed, r.completedAt = :completedAt " +
+            "WHERE r.sessionId = :sessionId AND r.status = :running AND r.processedEvents >= r.totalEvents")
+    int completeIfFinished(@Param("sessionId") String sessionId,
+                           @Param("running") ReplaySessionStatus running,
+                           @Param("completed") ReplaySessionStatus completed,
+                           @Param("completedAt") LocalDateTime completedAt);
 }
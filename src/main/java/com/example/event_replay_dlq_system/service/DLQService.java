@@ -44,8 +44,10 @@ public class DLQService {
 
 
         EventProcessingLog eventLog = eventProcessingLogRepository.getByEventIdAndProcessorName(event.getEventId(), processorName).orElseThrow();
-        eventLog.setStatus(ProcessingStatus.DLQ);
-        eventProcessingLogRepository.save(eventLog);
+        if (eventLog.getStatus() != ProcessingStatus.DLQ) {
+            eventLog.setStatus(ProcessingStatus.DLQ);
+            eventProcessingLogRepository.save(eventLog);
+        }
 
         DeadLetterQueue dlqEvent = DeadLetterQueue.builder()
                 .eventId(event.getEventId())
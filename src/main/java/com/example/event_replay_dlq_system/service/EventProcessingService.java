@@ -6,136 +6,582 @@ import com.example.event_replay_dlq_system.enums.ProcessingStatus;
 import com.example.event_replay_dlq_system.exception.ProcessingException;
 import com.example.event_replay_dlq_system.mapper.EventMapper;
 import com.example.event_replay_dlq_system.processor.EventProcessor;
+import com.example.event_replay_dlq_system.processor.ProcessorRegistry;
 import com.example.event_replay_dlq_system.repository.EventProcessingLogRepository;
+import com.example.event_replay_dlq_system.repository.EventProcessingLogRepositoryCustom.LogKey;
+import com.example.event_replay_dlq_system.service.breaker.ProcessorCircuitBreakers;
+import com.example.event_replay_dlq_system.service.bulkhead.ProcessorBulkheads;
+import com.example.event_replay_dlq_system.service.cache.TerminalStatusNearCache;
+import com.example.event_replay_dlq_system.service.retry.RetryBudget;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.Acknowledgment;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
 public class EventProcessingService {
     private final EventProcessingLogRepository eventProcessingLogRepository;
     private final RedisLockService redisLockService;
-    private final List<EventProcessor> processors;
+    private final ProcessorRegistry processorRegistry;
     private final RetrySchedulerService retrySchedulerService;
     private final DLQService dLQService;
+    private final ProcessingLogWriter processingLogWriter;
+    private final TerminalStatusNearCache terminalStatusNearCache;
+    private final ProcessorBulkheads processorBulkheads;
+    private final ProcessorCircuitBreakers processorCircuitBreakers;
+    private final RetryBudget retryBudget;
+    private final ExecutorService fanOutExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Value("${event-system.processing.idempotency}")
+    private String idempotency;
+
+    @Value("${event-system.processing.claim-timeout-seconds}")
+    private long claimTimeoutSeconds;
 
 
     @Autowired
-    public EventProcessingService(EventProcessingLogRepository eventProcessingLogRepository, RedisLockService redisLockService, List<EventProcessor> processors, RetrySchedulerService retrySchedulerService, DLQService dLQService) {
+    public EventProcessingService(EventProcessingLogRepository eventProcessingLogRepository, RedisLockService redisLockService, ProcessorRegistry processorRegistry, RetrySchedulerService retrySchedulerService, DLQService dLQService, ProcessingLogWriter processingLogWriter, TerminalStatusNearCache terminalStatusNearCache, ProcessorBulkheads processorBulkheads, ProcessorCircuitBreakers processorCircuitBreakers, RetryBudget retryBudget) {
         this.eventProcessingLogRepository = eventProcessingLogRepository;
         this.redisLockService = redisLockService;
-        this.processors = processors;
+        this.processorRegistry = processorRegistry;
         this.retrySchedulerService = retrySchedulerService;
         this.dLQService = dLQService;
+        this.processingLogWriter = processingLogWriter;
+        this.terminalStatusNearCache = terminalStatusNearCache;
+        this.processorBulkheads = processorBulkheads;
+        this.processorCircuitBreakers = processorCircuitBreakers;
+        this.retryBudget = retryBudget;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        fanOutExecutor.close();
+    }
+
+
+    /**
+     * Routes the event to every processor registered for its type
+     * A single processor runs on the consumer thread, several run in parallel, each with its own processing log
+     * The record is acknowledged once all of them are done and their final log transitions are durable,
+     * asynchronous processors can finish after this method returns
+     * If a transition could not be stored the record is left unacknowledged
+     *
+     * @param event event
+     * @param ack   manually acknowledge
+     * @return completes once the record is acknowledged, or left unacknowledged
+     */
+    public CompletableFuture<Void> processEvent(Event event, Acknowledgment ack) {
+        return process(event, ack, true);
     }
 
+    /**
+     * processEvent for a record of the retry topic: a retry or a parked event,
+     * its processor calls do not fund the retry budget
+     */
+    public CompletableFuture<Void> processRetryEvent(Event event, Acknowledgment ack) {
+        return process(event, ack, false);
+    }
 
-    public void processEvent(Event event, Acknowledgment ack) {
+    /**
+     * @param live record of the events topic, its processor calls count towards the retry budget
+     */
+    private CompletableFuture<Void> process(Event event, Acknowledgment ack, boolean live) {
 
         log.info("Received event: {} (type: {})", event.getEventId(), event.getEventType());
 
+        CompletableFuture<Void> durable = CompletableFuture.completedFuture(null);
         try {
-            EventProcessor processor = findProcessor(event.getEventType());
+            List<EventProcessor> eventProcessors = processorRegistry.processorsFor(event.getEventType());
 
-            if (processor == null) {
+            if (eventProcessors.isEmpty()) {
                 log.error("No EventProcessor found for event type {}", event.getEventType());
+            } else if (eventProcessors.size() == 1) {
+                durable = processWith(event, eventProcessors.get(0), live);
+            } else {
+                List<CompletableFuture<CompletableFuture<Void>>> runs = eventProcessors.stream()
+                        .map(processor -> CompletableFuture.supplyAsync(() -> processWith(event, processor, live), fanOutExecutor))
+                        .toList();
+                durable = CompletableFuture.allOf(runs.stream()
+                        .map(CompletableFuture::join)
+                        .toArray(CompletableFuture[]::new));
+            }
+
+        } catch (Exception e) {
+            log.error("Unexpected error while processing event {}", event.getEventId(), e);
+        }
+
+        // with the write-behind log writer this completes on the flusher thread, in flush order,
+        // acknowledge() only queues the offset for the consumer thread
+        // a log the writer gave up on leaves the record unacknowledged, async acks hold back the commit
+        return durable.handle((result, ex) -> {
+            if (ex == null) {
                 ack.acknowledge();
-                return;
+            } else {
+                log.error("Processing log of event {} is not durable, record left unacknowledged", event.getEventId(), ex);
             }
+            return null;
+        });
+    }
 
-            String processorName = processor.getProcessorName();
-            log.info("Using Processor: {}", processorName);
+    /**
+     * Batch variant of processEvent for the records of one poll
+     * Logs are loaded with one query and missing ones inserted in one batch,
+     * locks are taken with one pipelined redis call, processors run concurrently
+     * and the status transitions are written back with saveAll before the caller acks the batch
+     *
+     * @param events records of one poll
+     */
+    public void processBatch(List<Event> events) {
+        processBatch(events, true);
+    }
 
+    /**
+     * processBatch for the records of a retry topic poll, their processor calls do not fund the retry budget
+     */
+    public void processRetryBatch(List<Event> events) {
+        processBatch(events, false);
+    }
 
-            // Acquiring lock from redis to prevent duplicate processing
-            // event:lock:{eventId}:{processorName}
-            String lock = "event:lock:" + event.getEventId() + ":" + processorName;
+    private void processBatch(List<Event> events, boolean live) {
+        Map<String, BatchTask> tasks = new LinkedHashMap<>();
+        for (Event event : events) {
+            List<EventProcessor> eventProcessors = processorRegistry.processorsFor(event.getEventType());
+            if (eventProcessors.isEmpty()) {
+                log.error("No EventProcessor found for event type {}", event.getEventType());
+                continue;
+            }
+            for (EventProcessor processor : eventProcessors) {
+                if (isKnownTerminal(event, processor.getProcessorName())) {
+                    continue;
+                }
+                if (!processorCircuitBreakers.tryAcquirePermission(processor.getProcessorName())) {
+                    park(event, processor.getProcessorName());
+                    continue;
+                }
+                // the same record can show up twice in a poll after a rebalance, process it once
+                if (tasks.putIfAbsent(lockKey(event.getEventId(), processor.getProcessorName()), new BatchTask(event, processor)) != null) {
+                    processorCircuitBreakers.releasePermission(processor.getProcessorName());
+                }
+            }
+        }
+        if (tasks.isEmpty()) {
+            return;
+        }
 
-            if (!acquireLock(event, ack, lock)) {
-                return;
+        List<String> lockKeys = new ArrayList<>(tasks.keySet());
+        List<Boolean> acquired = redisLockService.acquireLocks(lockKeys, 300);
+
+        List<String> heldLocks = new ArrayList<>();
+        List<BatchTask> lockedTasks = new ArrayList<>();
+        for (int i = 0; i < lockKeys.size(); i++) {
+            if (acquired.get(i)) {
+                heldLocks.add(lockKeys.get(i));
+                lockedTasks.add(tasks.get(lockKeys.get(i)));
+            } else {
+                log.info("Event {} has been locked", tasks.get(lockKeys.get(i)).event().getEventId());
+                processorCircuitBreakers.releasePermission(tasks.get(lockKeys.get(i)).processor().getProcessorName());
             }
+        }
 
-            try {
-                EventProcessingLog eventProcessingLog = findOrCreateProcessingLog(event, processorName);
+        try {
+            processLockedBatch(lockedTasks, live);
+        } finally {
+            redisLockService.releaseLocks(heldLocks);
+        }
+
+        log.info("Processed batch of {} events ({} processor runs)", events.size(), lockedTasks.size());
+    }
+
+    private void processLockedBatch(List<BatchTask> tasks, boolean live) {
+        if (tasks.isEmpty()) {
+            return;
+        }
 
-                if (eventProcessingLog.getStatus() == ProcessingStatus.SUCCESS) {
-                    log.info("Event already successfully processed");
-                    ack.acknowledge();
-                    return;
+        Map<LogKey, EventProcessingLog> logs = new HashMap<>();
+        eventProcessingLogRepository.findAllByKeys(tasks.stream().map(BatchTask::key).toList())
+                .forEach(eLog -> logs.put(LogKey.of(eLog), eLog));
+
+        List<EventProcessingLog> missing = tasks.stream()
+                .filter(task -> !logs.containsKey(task.key()))
+                .map(task -> EventMapper.processEventLog(task.event(), ProcessingStatus.PENDING, task.processor().getProcessorName()))
+                .toList();
+        eventProcessingLogRepository.saveAll(missing).forEach(eLog -> logs.put(LogKey.of(eLog), eLog));
+
+        List<BatchTask> runnable = new ArrayList<>();
+        LocalDateTime startTime = LocalDateTime.now();
+        for (BatchTask task : tasks) {
+            EventProcessingLog eLog = logs.get(task.key());
+            if (eLog.getStatus() == ProcessingStatus.SUCCESS || eLog.getStatus() == ProcessingStatus.DLQ) {
+                log.info("Event {} already {} for {}", task.event().getEventId(), eLog.getStatus(), task.processor().getProcessorName());
+                processorCircuitBreakers.releasePermission(task.processor().getProcessorName());
+                if (eLog.getStatus() == ProcessingStatus.SUCCESS) {
+                    terminalStatusNearCache.recordTerminal(task.event().getEventId(), task.processor().getProcessorName(), ProcessingStatus.SUCCESS);
                 }
-                if (eventProcessingLog.getStatus() == ProcessingStatus.DLQ) {
-                    log.info("Event already in DLQ");
-                    ack.acknowledge();
-                    return;
+                continue;
+            }
+            eLog.setStatus(ProcessingStatus.PROCESSING);
+            eLog.setAttemptCount(eLog.getAttemptCount() + 1);
+            eLog.setProcessingStartTime(startTime);
+            runnable.add(task);
+        }
+        if (runnable.isEmpty()) {
+            return;
+        }
+        List<EventProcessingLog> runnableLogs = runnable.stream().map(task -> logs.get(task.key())).toList();
+        eventProcessingLogRepository.saveAll(runnableLogs);
+        if (live) {
+            runnable.stream()
+                    .collect(Collectors.groupingBy(task -> task.processor().getProcessorName(), Collectors.counting()))
+                    .forEach((processorName, count) -> retryBudget.recordCalls(processorName, count.intValue()));
+        }
+
+        // processors with a bulk API get all of their events in one call, the others run per event
+        Map<BatchTask, String> failures = new ConcurrentHashMap<>();
+        Map<EventProcessor, List<BatchTask>> tasksByProcessor = runnable.stream()
+                .collect(Collectors.groupingBy(BatchTask::processor, LinkedHashMap::new, Collectors.toList()));
+        List<CompletableFuture<Void>> runs = new ArrayList<>();
+        tasksByProcessor.forEach((processor, processorTasks) -> {
+            if (processor.supportsBatch() && processorTasks.size() > 1) {
+                runs.add(CompletableFuture.runAsync(() -> runProcessorBatch(processor, processorTasks, failures), fanOutExecutor));
+            } else {
+                processorTasks.forEach(task -> runs.add(runProcessor(task, failures)));
+            }
+        });
+        CompletableFuture.allOf(runs.toArray(CompletableFuture[]::new)).join();
+
+        LocalDateTime endTime = LocalDateTime.now();
+        for (BatchTask task : runnable) {
+            EventProcessingLog eLog = logs.get(task.key());
+            eLog.setProcessingEndTime(endTime);
+
+            String failure = failures.get(task);
+            if (failure == null) {
+                eLog.setStatus(ProcessingStatus.SUCCESS);
+                continue;
+            }
+            eLog.setErrorMessage(failure);
+            eLog.setStatus(eLog.getAttemptCount() < eLog.getMaxAttempts() ? ProcessingStatus.RETRY : ProcessingStatus.DLQ);
+        }
+        eventProcessingLogRepository.saveAll(runnableLogs);
+        runnable.stream()
+                .filter(task -> logs.get(task.key()).getStatus() == ProcessingStatus.SUCCESS)
+                .forEach(task -> terminalStatusNearCache.recordTerminal(task.event().getEventId(), task.processor().getProcessorName(), ProcessingStatus.SUCCESS));
+
+        // retry and DLQ bookkeeping reads the stored logs, so it runs after the transitions are written
+        for (BatchTask task : runnable) {
+            EventProcessingLog eLog = logs.get(task.key());
+            String processorName = task.processor().getProcessorName();
+            if (eLog.getStatus() == ProcessingStatus.RETRY) {
+                log.info("Processing failed for event, will retry (attempt {}/{})", eLog.getAttemptCount(), eLog.getMaxAttempts());
+                retrySchedulerService.scheduleRetry(task.event(), processorName, eLog.getAttemptCount());
+            } else if (eLog.getStatus() == ProcessingStatus.DLQ) {
+                log.warn("Max attempts reached, moving to DLQ {}", task.event().getEventId());
+                dLQService.moveToDLQ(task.event(), processorName, eLog.getErrorMessage(), eLog.getAttemptCount());
+            }
+        }
+    }
+
+    private CompletableFuture<Void> runProcessor(BatchTask task, Map<BatchTask, String> failures) {
+        return CompletableFuture.supplyAsync(() -> callProcessor(task.event(), task.processor()), fanOutExecutor)
+                .thenCompose(Function.identity())
+                .exceptionally(ex -> {
+                    recordFailure(task, unwrap(ex), failures);
+                    return null;
+                });
+    }
+
+    private void runProcessorBatch(EventProcessor processor, List<BatchTask> tasks, Map<BatchTask, String> failures) {
+        try {
+            List<Event> events = tasks.stream().map(BatchTask::event).toList();
+            Map<String, ProcessingException> batchFailures = processorBulkheads.submit(processor.getProcessorName(),
+                    () -> CompletableFuture.completedFuture(processor.processBatch(events))).join();
+            for (BatchTask task : tasks) {
+                ProcessingException failure = batchFailures.get(task.event().getEventId());
+                processorCircuitBreakers.onResult(processor.getProcessorName(), failure);
+                if (failure != null) {
+                    failures.put(task, failure.getMessage());
                 }
+            }
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            tasks.forEach(task -> {
+                processorCircuitBreakers.onResult(processor.getProcessorName(), e);
+                recordFailure(task, unwrap(e), failures);
+            });
+        }
+    }
 
-                eventProcessingLog.setStatus(ProcessingStatus.PROCESSING);
-                eventProcessingLog.setAttemptCount(eventProcessingLog.getAttemptCount() + 1);
-                eventProcessingLog.setProcessingStartTime(LocalDateTime.now());
-                eventProcessingLogRepository.save(eventProcessingLog);
+    private void recordFailure(BatchTask task, Throwable failure, Map<BatchTask, String> failures) {
+        if (failure instanceof ProcessingException) {
+            failures.put(task, failure.getMessage());
+            return;
+        }
+        log.error("Unexpected error while processing event {} with {}", task.event().getEventId(), task.processor().getProcessorName(), failure);
+        failures.put(task, "Unexpected error: " + failure.getMessage());
+    }
 
+    /**
+     * Runs one processor for the event, guarded by its own lock and processing log
+     * The lock is held until the final transition is durable
+     *
+     * @param event     event
+     * @param processor processor
+     * @param live      first attempt from the events topic, the call counts towards the retry budget
+     * @return completes when the final log transition is durable
+     */
+    private CompletableFuture<Void> processWith(Event event, EventProcessor processor, boolean live) {
+        if (isKnownTerminal(event, processor.getProcessorName())) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if ("claim".equals(idempotency)) {
+            return processWithClaim(event, processor, live);
+        }
+
+        String processorName = processor.getProcessorName();
+        log.info("Using Processor: {}", processorName);
+
+
+        // Acquiring lock from redis to prevent duplicate processing
+        // event:lock:{eventId}:{processorName}
+        String lock = lockKey(event.getEventId(), processorName);
+
+        if (!acquireLock(event, lock)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> durable = CompletableFuture.completedFuture(null);
+        try {
+            // a new log is not stored as PENDING first, its first write is the PROCESSING transition
+            EventProcessingLog eventProcessingLog = eventProcessingLogRepository.getByEventIdAndProcessorName(event.getEventId(), processorName)
+                    .orElseGet(() -> EventMapper.processEventLog(event, ProcessingStatus.PENDING, processorName));
+
+            if (eventProcessingLog.getStatus() == ProcessingStatus.SUCCESS) {
+                log.info("Event already successfully processed by {}", processorName);
+                terminalStatusNearCache.recordTerminal(event.getEventId(), processorName, ProcessingStatus.SUCCESS);
+                return durable;
+            }
+            if (eventProcessingLog.getStatus() == ProcessingStatus.DLQ) {
+                log.info("Event already in DLQ for {}", processorName);
+                return durable;
+            }
+            // taken right before the call, so a half open breaker's probe is not spent on a skipped event
+            if (!processorCircuitBreakers.tryAcquirePermission(processorName)) {
+                park(event, processorName);
+                return durable;
+            }
 
-                // Call processor
-                processor.process(event);
+            eventProcessingLog.setStatus(ProcessingStatus.PROCESSING);
+            eventProcessingLog.setAttemptCount(eventProcessingLog.getAttemptCount() + 1);
+            eventProcessingLog.setProcessingStartTime(LocalDateTime.now());
+            CompletableFuture<Void> started = processingLogWriter.write(eventProcessingLog);
+            if (live) {
+                retryBudget.recordCalls(processorName, 1);
+            }
+
+            // Call processor
+            durable = processThen(event, processor, failure -> {
+                if (failure instanceof ProcessingException e) {
+                    // retry and DLQ handling read the stored log
+                    if (started.handle((result, ex) -> ex != null).join()) {
+                        return started;
+                    }
+                    handleProcessingFailure(event, processorName, e);
+                    return started;
+                }
+                if (failure != null) {
+                    log.error("Unexpected error while processing event {} with {}", event.getEventId(), processorName, failure);
+                    return started;
+                }
 
                 eventProcessingLog.setStatus(ProcessingStatus.SUCCESS);
                 eventProcessingLog.setProcessingEndTime(LocalDateTime.now());
-                eventProcessingLogRepository.save(eventProcessingLog);
-
-                log.info("Event successfully processed {}", event.getEventId());
-                ack.acknowledge();
+                CompletableFuture<Void> done = processingLogWriter.write(eventProcessingLog);
+                terminalStatusNearCache.recordTerminal(event.getEventId(), processorName, ProcessingStatus.SUCCESS);
 
+                log.info("Event successfully processed {} by {}", event.getEventId(), processorName);
+                return done;
+            });
 
-            } catch (ProcessingException e) {
-                handleProcessingFailure(event, processorName, e, ack);
-                ack.acknowledge();
-            } finally {
+        } catch (Exception e) {
+            log.error("Unexpected error while processing event {} with {}", event.getEventId(), processorName, e);
+        } finally {
+            if (durable.isDone()) {
                 redisLockService.releaseLock(lock);
+            } else {
+                durable.whenCompleteAsync((result, ex) -> redisLockService.releaseLock(lock), fanOutExecutor);
             }
+        }
+        return durable;
+    }
 
+    /**
+     * Claim mode of processWith, no redis lock
+     * The claim upsert decides ownership and counts the attempt in one statement,
+     * success is a conditional PROCESSING -> SUCCESS update: two round trips instead of five
+     *
+     * @param event     event
+     * @param processor processor
+     * @param live      first attempt from the events topic, the call counts towards the retry budget
+     * @return completes when the processor is done and its outcome is stored
+     */
+    private CompletableFuture<Void> processWithClaim(Event event, EventProcessor processor, boolean live) {
+        String processorName = processor.getProcessorName();
+        LocalDateTime now = LocalDateTime.now();
+
+        // taken before the claim, which counts an attempt, and given back if the claim is not made
+        if (!processorCircuitBreakers.tryAcquirePermission(processorName)) {
+            park(event, processorName);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        try {
+            Optional<Integer> attempt = eventProcessingLogRepository.claim(event.getEventId(), processorName,
+                    EventMapper.DEFAULT_MAX_ATTEMPTS, now, now.minusSeconds(claimTimeoutSeconds));
+
+            if (attempt.isEmpty()) {
+                log.info("Event {} already processed or in progress for {}", event.getEventId(), processorName);
+                processorCircuitBreakers.releasePermission(processorName);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            log.info("Using Processor: {} (attempt {})", processorName, attempt.get());
+            if (live) {
+                retryBudget.recordCalls(processorName, 1);
+            }
+            return processThen(event, processor, failure -> {
+                if (failure instanceof ProcessingException e) {
+                    handleProcessingFailure(event, processorName, e);
+                    return CompletableFuture.completedFuture(null);
+                }
+                if (failure != null) {
+                    log.error("Unexpected error while processing event {} with {}", event.getEventId(), processorName, failure);
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                if (eventProcessingLogRepository.transition(event.getEventId(), processorName,
+                        ProcessingStatus.PROCESSING, ProcessingStatus.SUCCESS, LocalDateTime.now()) == 0) {
+                    log.warn("Claim of event {} for {} expired before it finished", event.getEventId(), processorName);
+                } else {
+                    terminalStatusNearCache.recordTerminal(event.getEventId(), processorName, ProcessingStatus.SUCCESS);
+                }
+
+                log.info("Event successfully processed {} by {}", event.getEventId(), processorName);
+                return CompletableFuture.completedFuture(null);
+            });
 
         } catch (Exception e) {
-            log.error("Unexpected error while processing event {}", event.getEventId(), e);
-            ack.acknowledge();
+            log.error("Unexpected error while processing event {} with {}", event.getEventId(), processorName, e);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * Calls the processor and hands its failure (null on success) to the continuation
+     * A processor that completed synchronously is continued inline, an asynchronous one on a virtual thread
+     * so log writes never run on a downstream client's threads
+     *
+     * @return the future returned by the continuation
+     */
+    private CompletableFuture<Void> processThen(Event event, EventProcessor processor, Function<Throwable, CompletableFuture<Void>> continuation) {
+        CompletableFuture<Void> processing = callProcessor(event, processor);
+
+        BiFunction<Void, Throwable, CompletableFuture<Void>> handler = (ignored, ex) -> {
+            try {
+                return continuation.apply(unwrap(ex));
+            } catch (Exception e) {
+                log.error("Unexpected error while completing event {} with {}", event.getEventId(), processor.getProcessorName(), e);
+                return CompletableFuture.completedFuture(null);
+            }
+        };
+        return (processing.isDone() ? processing.handle(handler) : processing.handleAsync(handler, fanOutExecutor))
+                .thenCompose(Function.identity());
+    }
+
+    /**
+     * Calls processAsync within the processor's bulkhead, waits for a slot while its queue is full
+     * The outcome is reported to the processor's circuit breaker
+     */
+    private CompletableFuture<Void> callProcessor(Event event, EventProcessor processor) {
+        try {
+            return processorBulkheads.submit(processor.getProcessorName(), () -> processor.processAsync(event))
+                    .whenComplete((result, ex) -> processorCircuitBreakers.onResult(processor.getProcessorName(), ex));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
         }
     }
 
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
     /**
      *
      * @param event TYPE OF event
-     * @param ack   Manually acknowledge
      * @param lock  which lock to proceed
      * @return true if redis acquire lock successfully, else false
      */
 
-    private boolean acquireLock(Event event, Acknowledgment ack, String lock) {
+    private boolean acquireLock(Event event, String lock) {
         boolean lockAcquired = redisLockService.acquireLock(lock, 300);
         if (!lockAcquired) {
             log.info("Event {} has been locked", event.getEventId());
-            ack.acknowledge();
             return false;
         }
         return true;
     }
 
     /**
-     * find individual processor
-     *
-     * @param eventType type of event
-     * @return processor or null in case not find it
+     * The processor's circuit is open: the event goes around through the retry topic
+     * once the processor may be called again, its attempt count is not increased
      */
-    private EventProcessor findProcessor(String eventType) {
-        return processors.stream()
-                .filter(p -> p.canProcess(eventType))
-                .findFirst()
-                .orElse(null);
+    private void park(Event event, String processorName) {
+        long waitMillis = processorCircuitBreakers.millisUntilPermitted(processorName);
+        retrySchedulerService.deferRetry(event, processorName, Duration.ofMillis(Math.max(waitMillis, 100)));
+    }
+
+    /**
+     * Near cache check, lets duplicates of finished events skip the redis lock and the log lookup
+     */
+    private boolean isKnownTerminal(Event event, String processorName) {
+        Optional<ProcessingStatus> terminal = terminalStatusNearCache.terminalStatus(event.getEventId(), processorName);
+        terminal.ifPresent(status -> log.info("Event {} already {} for {}", event.getEventId(), status, processorName));
+        return terminal.isPresent();
+    }
+
+    private static String lockKey(String eventId, String processorName) {
+        return "event:lock:" + eventId + ":" + processorName;
+    }
+
+    private record BatchTask(Event event, EventProcessor processor) {
+        LogKey key() {
+            return new LogKey(event.getEventId(), processor.getProcessorName());
+        }
     }
 
     /**
@@ -165,9 +611,9 @@ public class EventProcessingService {
      * @param event         type of event
      * @param processorName specific processor to process event
      * @param e             which exception we get
-     * @param ack           acknowledge event for reliable guarantee
      */
-    private void handleProcessingFailure(Event event, String processorName, ProcessingException e, Acknowledgment ack) {
+    private void handleProcessingFailure(Event event, String processorName, ProcessingException e) {
+        // saved synchronously even in write-behind mode: the retry queue and the DLQ read the stored row right after
         EventProcessingLog eLog = eventProcessingLogRepository.getByEventIdAndProcessorName(event.getEventId(), processorName).orElseThrow();
 
 
@@ -178,8 +624,9 @@ public class EventProcessingService {
         if (eLog.getAttemptCount() < eLog.getMaxAttempts()) {
             log.info("Processing failed for event, will retry (attempt {}/{})", eLog.getAttemptCount(), eLog.getMaxAttempts());
             eLog.setStatus(ProcessingStatus.RETRY);
+            eventProcessingLogRepository.save(eLog);
 
-
+            // stored before scheduling, scheduleRetry adds the next retry time to the stored row
             retrySchedulerService.scheduleRetry(event, processorName, eLog.getAttemptCount());
 
         } else {
@@ -192,8 +639,5 @@ public class EventProcessingService {
         }
 
 
-        eventProcessingLogRepository.save(eLog);
-
-
     }
 }
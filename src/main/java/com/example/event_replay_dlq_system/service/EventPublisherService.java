@@ -1,29 +1,46 @@
 package com.example.event_replay_dlq_system.service;
 
 
+import com.example.event_replay_dlq_system.dto.EventBatchItemResultDTO;
+import com.example.event_replay_dlq_system.dto.EventBatchPublishResponseDTO;
 import com.example.event_replay_dlq_system.dto.EventDetailResponse;
 import com.example.event_replay_dlq_system.dto.EventProcessingLogResponse;
 import com.example.event_replay_dlq_system.dto.EventPublishRequestDTO;
 import com.example.event_replay_dlq_system.dto.EventPublishResponseDTO;
 import com.example.event_replay_dlq_system.entity.Event;
 import com.example.event_replay_dlq_system.entity.EventProcessingLog;
+import com.example.event_replay_dlq_system.entity.OutboxEvent;
 import com.example.event_replay_dlq_system.enums.ProcessingStatus;
 import com.example.event_replay_dlq_system.exception.EventNotFoundException;
 import com.example.event_replay_dlq_system.exception.EventProcessingLogNotFoundException;
 import com.example.event_replay_dlq_system.mapper.EventMapper;
 import com.example.event_replay_dlq_system.repository.EventProcessingLogRepository;
 import com.example.event_replay_dlq_system.repository.EventRepository;
+import com.example.event_replay_dlq_system.service.outbox.OutboxService;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
 import jakarta.transaction.Transactional;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
 import java.util.UUID;
 
 @Slf4j
@@ -32,21 +49,35 @@ import java.util.UUID;
 public class EventPublisherService {
 
     private final EventRepository eventRepository;
-    private final KafkaProducerService kafkaProducerService;
+    private final OutboxService outboxService;
     private final EventProcessingLogRepository eventProcessingLogRepository;
+    private final Validator validator;
+    private final ExecutorService publishExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Value("${event-system.ingestion.max-batch-size}")
+    private int maxBatchSize;
+
+    @Value("${event-system.ingestion.await-ack}")
+    private boolean awaitAck;
 
     @Autowired
-    public EventPublisherService(EventRepository eventRepository, EventProcessingLogRepository eventProcessingLogRepository, KafkaProducerService kafkaProducerService) {
+    public EventPublisherService(EventRepository eventRepository, EventProcessingLogRepository eventProcessingLogRepository, OutboxService outboxService, Validator validator) {
         this.eventRepository = eventRepository;
-        this.kafkaProducerService = kafkaProducerService;
+        this.outboxService = outboxService;
         this.eventProcessingLogRepository = eventProcessingLogRepository;
+        this.validator = validator;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        publishExecutor.close();
     }
 
     /**
      * Creates an event and save to the database
-     * Later it will be published to kafka
-     * Update status of Event
-     * Add to the log
+     * Adds it to the outbox in the same transaction
+     * With await-ack the event is sent right after commit and the response completes on the broker ack,
+     * otherwise (or if the ack does not come in time) the outbox relay publishes it
      *
      * @param
      * @return eventID, status of event, success/error message, time
@@ -54,24 +85,113 @@ public class EventPublisherService {
 
 
     @Transactional
-    public EventPublishResponseDTO publishEvent(EventPublishRequestDTO eventPublishRequestDTO) {
+    public CompletableFuture<EventPublishResponseDTO> publishEvent(EventPublishRequestDTO eventPublishRequestDTO) {
         // save event
         try {
             Event event = EventMapper.mapToEventEntity(eventPublishRequestDTO);
-            event = eventRepository.save(event);
-
+            Event savedEvent = eventRepository.save(event);
+            OutboxEvent outboxEvent = outboxService.enqueue(List.of(savedEvent)).get(0);
+
+            if (!awaitAck) {
+                return CompletableFuture.completedFuture(EventMapper.mapToEventPublishResponseDTO(savedEvent));
+            }
+
+            CompletableFuture<EventPublishResponseDTO> response = new CompletableFuture<>();
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    // the event is committed: whatever happens to the send, the answer is at least ACCEPTED
+                    try {
+                        // sent off the request thread, send blocks up to max.block.ms on metadata or buffer space
+                        CompletableFuture.supplyAsync(() -> outboxService.publishNow(outboxEvent, savedEvent), publishExecutor)
+                                .thenCompose(Function.identity())
+                                .whenComplete((result, ex) -> {
+                                    if (ex == null) {
+                                        response.complete(EventMapper.mapToPublishedResponseDTO(savedEvent));
+                                    } else {
+                                        log.warn("No broker ack for event {}, left to the outbox relay: {}", savedEvent.getEventId(), ex.getMessage());
+                                        response.complete(EventMapper.mapToEventPublishResponseDTO(savedEvent));
+                                    }
+                                });
+                    } catch (Exception e) {
+                        log.warn("Failed to send event {}, left to the outbox relay: {}", savedEvent.getEventId(), e.getMessage());
+                        response.complete(EventMapper.mapToEventPublishResponseDTO(savedEvent));
+                    }
+                }
+
+                @Override
+                public void afterCompletion(int status) {
+                    if (status != STATUS_COMMITTED) {
+                        response.completeExceptionally(new RuntimeException("Failed to publish event " + savedEvent.getEventId()));
+                    }
+                }
+            });
+            return response;
 
-            kafkaProducerService.sendEvent(event);
+        } catch (Exception e) {
+            log.error("Failed to publish event {}", e.getMessage());
+            throw new RuntimeException("Failed to publish event " + e.getMessage());
+        }
 
+    }
 
-            return EventMapper.mapToEventPublishResponseDTO(event);
+    /**
+     * Validates every event of the batch on its own
+     * Saves the valid ones and their outbox rows with saveAll in this transaction (batched inserts)
+     * The outbox relay publishes them to kafka in batches
+     *
+     * @param requests events to publish
+     * @return result of every event in request order
+     */
+    @Transactional
+    public EventBatchPublishResponseDTO publishEventBatch(List<EventPublishRequestDTO> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("Batch must contain at least one event");
+        }
+        if (requests.size() > maxBatchSize) {
+            throw new IllegalArgumentException("Batch size " + requests.size() + " exceeds the limit of " + maxBatchSize);
+        }
 
+        List<EventBatchItemResultDTO> results = new ArrayList<>(requests.size());
+        List<Event> events = new ArrayList<>();
+
+        for (int i = 0; i < requests.size(); i++) {
+            EventPublishRequestDTO request = requests.get(i);
+            if (request == null) {
+                results.add(EventMapper.toRejectedBatchItem(i, List.of("Event is required")));
+                continue;
+            }
+
+            Set<ConstraintViolation<EventPublishRequestDTO>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                results.add(EventMapper.toRejectedBatchItem(i, violations.stream()
+                        .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                        .toList()));
+                continue;
+            }
+
+            Event event = EventMapper.mapToEventEntity(request);
+            events.add(event);
+            results.add(EventMapper.toAcceptedBatchItem(i, event));
+        }
 
+        try {
+            List<Event> savedEvents = eventRepository.saveAll(events);
+            outboxService.enqueue(savedEvents);
         } catch (Exception e) {
-            log.error("Failed to publish event {}", e.getMessage());
-            throw new RuntimeException("Failed to publish event " + e.getMessage());
+            log.error("Failed to publish event batch {}", e.getMessage());
+            throw new RuntimeException("Failed to publish event batch " + e.getMessage());
         }
 
+        log.info("Accepted batch of {} events ({} rejected)", events.size(), requests.size() - events.size());
+
+        return EventBatchPublishResponseDTO.builder()
+                .total(requests.size())
+                .accepted(events.size())
+                .rejected(requests.size() - events.size())
+                .results(results)
+                .timestamp(LocalDateTime.now())
+                .build();
     }
 
     /***
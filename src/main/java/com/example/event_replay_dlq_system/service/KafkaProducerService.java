@@ -4,28 +4,41 @@ import com.example.event_replay_dlq_system.dto.DLQEventDTO;
 import com.example.event_replay_dlq_system.entity.DeadLetterQueue;
 import com.example.event_replay_dlq_system.entity.Event;
 import com.example.event_replay_dlq_system.entity.ReplayEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.producer.ProducerRecord;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
 @Service
 @Slf4j
 public class KafkaProducerService {
 
+    /**
+     * Epoch millis a retry on a delay-tier topic is due at
+     */
+    public static final String RETRY_DUE_AT_HEADER = "retry-due-at";
 
     private final NewTopic eventsTopic;
     private final NewTopic dlqTopic;
     private final NewTopic retryTopic;
     private final NewTopic replayTopic;
     private KafkaTemplate<String, Object> kafkaTemplate;
+    private final MeterRegistry meterRegistry;
 
     @Autowired
-    public KafkaProducerService(KafkaTemplate<String, Object> kafkaTemplate, NewTopic eventsTopic, NewTopic dlqTopic, NewTopic retryTopic, NewTopic replayTopic) {
+    public KafkaProducerService(KafkaTemplate<String, Object> kafkaTemplate, NewTopic eventsTopic, NewTopic dlqTopic, NewTopic retryTopic, NewTopic replayTopic, MeterRegistry meterRegistry) {
         this.kafkaTemplate = kafkaTemplate;
+        this.meterRegistry = meterRegistry;
         this.eventsTopic = eventsTopic;
         this.dlqTopic = dlqTopic;
         this.retryTopic = retryTopic;
@@ -44,21 +57,45 @@ public class KafkaProducerService {
 
     public void sendEvent(Event event) {
         try {
-            log.debug("Sending event to Kafka: {}", event.getEventId());
-            kafkaTemplate.send(eventsTopic.name(), event.getEventId(), event)
-                    .whenComplete((result, ex) -> {
-                        if (ex == null) {
-                            log.info("Event published successfully to topic: '{}': eventId={}", eventsTopic.name(), event.getEventId());
-                        } else {
-                            log.error("Failed to publish event to Kafka: eventId:{}", event.getEventId(), ex);
-                        }
-                    });
+            sendEventWithAck(event);
         } catch (Exception e) {
             log.error("Error publishing event to kafka: eventId:{}", event.getEventId(), e);
             throw new KafkaException("Error sending event " + event.getEventId(), e);
         }
     }
 
+    /**
+     * -- Sending an event to the events-topic and handing back the broker ack
+     * Used by the outbox relay and by the ack-awaiting ingest path.
+     * The producer groups the records into per-partition batches (batch.size / linger.ms).
+     * Send-to-ack latency is recorded in the event.publish.ack.latency histogram.
+     *
+     * @param event Event
+     * @return completes when the broker acked the record
+     */
+
+    public CompletableFuture<SendResult<String, Object>> sendEventWithAck(Event event) {
+        log.debug("Sending event to Kafka: {}", event.getEventId());
+        Timer.Sample sample = Timer.start(meterRegistry);
+        return kafkaTemplate.send(eventsTopic.name(), event.getEventId(), event)
+                .whenComplete((result, ex) -> {
+                    sample.stop(ackLatencyTimer(ex == null ? "acked" : "failed"));
+                    if (ex == null) {
+                        log.info("Event published successfully to topic: '{}': eventId={}", eventsTopic.name(), event.getEventId());
+                    } else {
+                        log.error("Failed to publish event to Kafka: eventId:{}", event.getEventId(), ex);
+                    }
+                });
+    }
+
+    private Timer ackLatencyTimer(String outcome) {
+        return Timer.builder("event.publish.ack.latency")
+                .description("Time from send to broker acknowledgment on the events topic")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
     /**
      * -- Sending an event to the dlq-topic
      * Partitioning by event-id
@@ -111,11 +148,39 @@ public class KafkaProducerService {
 
     public void sendRetryEvent(Event event) {
         try {
-            log.debug("Publishing Retry event to Kafka: {}", event.getEventId());
-            kafkaTemplate.send(retryTopic.name(), event.getEventId(), event);
+            sendRetryEventWithAck(event);
         } catch (Exception e) {
             log.error("Error publishing Retry event to kafka: eventId:{}", event.getEventId());
             throw new KafkaException("Error publishing Retry event " + event.getEventId(), e);
         }
     }
+
+    /**
+     * -- Sending an event to the retry-topic and handing back the broker ack
+     * Used by the retry delay queue, which only drops a claimed retry once it is acked
+     *
+     * @param event Event
+     * @return completes when the broker acked the record
+     */
+
+    public CompletableFuture<SendResult<String, Object>> sendRetryEventWithAck(Event event) {
+        log.debug("Publishing Retry event to Kafka: {}", event.getEventId());
+        return kafkaTemplate.send(retryTopic.name(), event.getEventId(), event);
+    }
+
+    /**
+     * -- Sending an event to one of the retry delay-tier topics and handing back the broker ack
+     *
+     * @param topic tier topic
+     * @param event Event
+     * @param dueAt epoch millis the retry is due at, sent as the retry-due-at header
+     * @return completes when the broker acked the record
+     */
+
+    public CompletableFuture<SendResult<String, Object>> sendRetryTierEventWithAck(String topic, Event event, long dueAt) {
+        log.debug("Publishing Retry event to tier {}: {}", topic, event.getEventId());
+        ProducerRecord<String, Object> record = new ProducerRecord<>(topic, event.getEventId(), event);
+        record.headers().add(RETRY_DUE_AT_HEADER, String.valueOf(dueAt).getBytes(StandardCharsets.UTF_8));
+        return kafkaTemplate.send(record);
+    }
 }
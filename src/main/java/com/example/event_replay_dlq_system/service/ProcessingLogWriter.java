@@ -0,0 +1,350 @@
+package com.example.event_replay_dlq_system.service;
+
+import com.example.event_replay_dlq_system.entity.EventProcessingLog;
+import com.example.event_replay_dlq_system.enums.ProcessingStatus;
+import com.example.event_replay_dlq_system.repository.EventProcessingLogRepository;
+import com.example.event_replay_dlq_system.repository.EventProcessingLogRepositoryCustom.LogKey;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Writes EventProcessingLog transitions, synchronously or write-behind.
+ * In write-behind mode transitions are buffered per (eventId, processor), so a PROCESSING
+ * followed by SUCCESS before the next flush costs one write. A flusher thread stores the buffer
+ * every flush-interval-ms, or as soon as max-batch-size rows are waiting, in one transaction:
+ * new rows as batched inserts, existing rows as one JDBC batch update.
+ * The future of a write completes once the row is durable, callers commit offsets on it.
+ * When a batch fails its rows are written one by one, new rows as upserts on uk_event_processor,
+ * so one bad row does not hold back the others. A row that still fails is retried with backoff,
+ * after max-flush-attempts its future fails and the record is not acknowledged.
+ * A write copies the log into an immutable snapshot, the flusher never reads an instance
+ * that worker threads keep changing. The id of a new row is set on the written instance by the flusher after commit.
+ */
+@Slf4j
+@Service
+public class ProcessingLogWriter {
+
+    private static final String UPDATE_SQL = "UPDATE event_processing_log SET status = ?, attempt_count = ?, " +
+            "error_message = ?, processing_start_time = ?, processing_end_time = ?, next_retry_time = ?, updated_at = ? " +
+            "WHERE id = ?";
+
+    private static final String UPSERT_SQL = "INSERT INTO event_processing_log (id, event_id, processor_name, status, " +
+            "attempt_count, max_attempts, error_message, error_stack_trace, processing_start_time, processing_end_time, " +
+            "next_retry_time, created_at, updated_at) " +
+            "VALUES (nextval('event_processing_log_seq'), ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (event_id, processor_name) DO UPDATE SET status = EXCLUDED.status, " +
+            "attempt_count = EXCLUDED.attempt_count, max_attempts = EXCLUDED.max_attempts, " +
+            "error_message = EXCLUDED.error_message, error_stack_trace = EXCLUDED.error_stack_trace, " +
+            "processing_start_time = EXCLUDED.processing_start_time, processing_end_time = EXCLUDED.processing_end_time, " +
+            "next_retry_time = EXCLUDED.next_retry_time, updated_at = EXCLUDED.updated_at " +
+            "RETURNING id";
+
+    private final EventProcessingLogRepository eventProcessingLogRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Object monitor = new Object();
+    private LinkedHashMap<LogKey, PendingWrite> pending = new LinkedHashMap<>();
+    private volatile boolean running;
+    private Thread flusher;
+
+    @Value("${event-system.processing.log-writer.mode}")
+    private String mode;
+
+    @Value("${event-system.processing.log-writer.flush-interval-ms}")
+    private long flushIntervalMs;
+
+    @Value("${event-system.processing.log-writer.max-batch-size}")
+    private int maxBatchSize;
+
+    @Value("${event-system.processing.log-writer.max-flush-attempts}")
+    private int maxFlushAttempts;
+
+    @Value("${event-system.processing.log-writer.retry-backoff-ms}")
+    private long retryBackoffMs;
+
+    @Autowired
+    public ProcessingLogWriter(EventProcessingLogRepository eventProcessingLogRepository, JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.eventProcessingLogRepository = eventProcessingLogRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!isWriteBehind()) {
+            return;
+        }
+        running = true;
+        flusher = Thread.ofPlatform().name("processing-log-flusher").daemon().start(this::runFlusher);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        running = false;
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+        flusher.join(10_000);
+    }
+
+    public boolean isWriteBehind() {
+        return "write-behind".equals(mode);
+    }
+
+    /**
+     * Store the current state of the log
+     * In write-behind mode the state at the time of the call is buffered, a later write
+     * of the same log before the next flush replaces it, so the two transitions coalesce
+     *
+     * @param eventProcessingLog log to store
+     * @return completes once the state (or a later one of the same log) is durable
+     */
+    public CompletableFuture<Void> write(EventProcessingLog eventProcessingLog) {
+        if (!isWriteBehind()) {
+            eventProcessingLogRepository.save(eventProcessingLog);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        synchronized (monitor) {
+            PendingWrite write = pending.computeIfAbsent(LogKey.of(eventProcessingLog), PendingWrite::new);
+            write.source = eventProcessingLog;
+            write.state = LogState.of(eventProcessingLog);
+            if (pending.size() >= maxBatchSize) {
+                monitor.notifyAll();
+            }
+            return write.durable;
+        }
+    }
+
+    private void runFlusher() {
+        // a full buffer of rows waiting for their backoff must not keep the flusher spinning
+        boolean idle = false;
+        while (true) {
+            LinkedHashMap<LogKey, PendingWrite> batch;
+            synchronized (monitor) {
+                if (running && (idle || pending.size() < maxBatchSize)) {
+                    try {
+                        monitor.wait(flushIntervalMs);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        running = false;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+                batch = takeDue(running ? System.currentTimeMillis() : Long.MAX_VALUE);
+            }
+            idle = batch.isEmpty();
+            if (!idle) {
+                flush(batch);
+            }
+        }
+    }
+
+    /**
+     * Remove the writes that are not waiting for a retry backoff from the buffer
+     */
+    private LinkedHashMap<LogKey, PendingWrite> takeDue(long now) {
+        LinkedHashMap<LogKey, PendingWrite> due = new LinkedHashMap<>();
+        pending.entrySet().removeIf(entry -> {
+            if (entry.getValue().retryAt > now) {
+                return false;
+            }
+            due.put(entry.getKey(), entry.getValue());
+            return true;
+        });
+        return due;
+    }
+
+    private void flush(LinkedHashMap<LogKey, PendingWrite> batch) {
+        // rows that failed before skip the batch, it would most likely fail again
+        List<PendingWrite> fresh = new ArrayList<>();
+        List<PendingWrite> retried = new ArrayList<>();
+        batch.values().forEach(write -> (write.failures == 0 ? fresh : retried).add(write));
+
+        if (!fresh.isEmpty() && !flushBatch(fresh)) {
+            retried.addAll(fresh);
+        }
+
+        List<PendingWrite> failed = new ArrayList<>();
+        for (PendingWrite write : retried) {
+            try {
+                Long id = transactionTemplate.execute(status -> flushOne(write));
+                write.source.setId(id);
+                write.durable.complete(null);
+            } catch (Exception e) {
+                if (++write.failures >= maxFlushAttempts) {
+                    log.error("Giving up on processing log of event {} for {} after {} attempts: {}",
+                            write.state.eventId(), write.state.processorName(), write.failures, e.getMessage());
+                    write.durable.completeExceptionally(e);
+                } else {
+                    write.retryAt = System.currentTimeMillis() + (retryBackoffMs << Math.min(write.failures - 1, 10));
+                    failed.add(write);
+                }
+            }
+        }
+
+        if (!failed.isEmpty()) {
+            log.warn("Failed to flush {} processing log writes, will retry", failed.size());
+            requeue(failed);
+        }
+    }
+
+    /**
+     * Write the rows in one transaction
+     *
+     * @return false if the transaction failed, the rows are left to the row by row path
+     */
+    private boolean flushBatch(List<PendingWrite> batch) {
+        // the id is only ever set by this thread once the instance was handed over, reading it here is safe
+        List<PendingWrite> inserts = new ArrayList<>();
+        List<PendingWrite> updates = new ArrayList<>();
+        batch.forEach(write -> (write.source.getId() == null ? inserts : updates).add(write));
+
+        List<EventProcessingLog> inserted = inserts.stream().map(write -> write.state.toEntity()).toList();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                eventProcessingLogRepository.saveAll(inserted);
+                LocalDateTime now = LocalDateTime.now();
+                jdbcTemplate.batchUpdate(UPDATE_SQL, updates, updates.size(), (ps, write) -> {
+                    LogState state = write.state;
+                    ps.setString(1, state.status().name());
+                    ps.setInt(2, state.attemptCount());
+                    ps.setString(3, state.errorMessage());
+                    ps.setTimestamp(4, toTimestamp(state.processingStartTime()));
+                    ps.setTimestamp(5, toTimestamp(state.processingEndTime()));
+                    ps.setTimestamp(6, toTimestamp(state.nextRetryTime()));
+                    ps.setTimestamp(7, Timestamp.valueOf(now));
+                    ps.setLong(8, write.source.getId());
+                });
+            });
+        } catch (Exception e) {
+            // rolled back ids are dropped with the entities, the row by row path writes from the snapshots
+            log.warn("Failed to flush {} processing log writes, writing them one by one: {}", batch.size(), e.getMessage());
+            return false;
+        }
+
+        for (int i = 0; i < inserts.size(); i++) {
+            inserts.get(i).source.setId(inserted.get(i).getId());
+        }
+
+        batch.forEach(write -> write.durable.complete(null));
+        log.debug("Flushed {} processing log writes ({} new)", batch.size(), inserts.size());
+        return true;
+    }
+
+    /**
+     * Write a single row, a new row is upserted: its insert may have been committed before
+     * (e.g. by an attempt whose outcome was lost) and must not fail on uk_event_processor
+     *
+     * @return id of the row
+     */
+    private Long flushOne(PendingWrite write) {
+        LogState state = write.state;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        if (write.source.getId() != null) {
+            jdbcTemplate.update(UPDATE_SQL, state.status().name(), state.attemptCount(), state.errorMessage(),
+                    toTimestamp(state.processingStartTime()), toTimestamp(state.processingEndTime()),
+                    toTimestamp(state.nextRetryTime()), now, write.source.getId());
+            return write.source.getId();
+        }
+        return jdbcTemplate.queryForObject(UPSERT_SQL, Long.class, state.eventId(), state.processorName(),
+                state.status().name(), state.attemptCount(), state.maxAttempts(), state.errorMessage(),
+                state.errorStackTrace(), toTimestamp(state.processingStartTime()), toTimestamp(state.processingEndTime()),
+                toTimestamp(state.nextRetryTime()), now, now);
+    }
+
+    /**
+     * Put failed writes back in front of the buffer, a newer write of the same log
+     * supersedes the failed one and completes both futures
+     */
+    private void requeue(List<PendingWrite> failed) {
+        synchronized (monitor) {
+            LinkedHashMap<LogKey, PendingWrite> merged = new LinkedHashMap<>();
+            failed.forEach(write -> merged.put(write.key, write));
+            for (Map.Entry<LogKey, PendingWrite> newer : pending.entrySet()) {
+                PendingWrite superseded = merged.put(newer.getKey(), newer.getValue());
+                if (superseded != null) {
+                    newer.getValue().durable.whenComplete((result, ex) -> {
+                        if (ex == null) {
+                            superseded.durable.complete(null);
+                        } else {
+                            superseded.durable.completeExceptionally(ex);
+                        }
+                    });
+                }
+            }
+            pending = merged;
+        }
+    }
+
+    private static Timestamp toTimestamp(LocalDateTime time) {
+        return time == null ? null : Timestamp.valueOf(time);
+    }
+
+    private static class PendingWrite {
+        private final LogKey key;
+        private final CompletableFuture<Void> durable = new CompletableFuture<>();
+        private EventProcessingLog source;
+        private LogState state;
+        // failed single row writes and when the next one may run, only touched by the flusher
+        private int failures;
+        private long retryAt;
+
+        PendingWrite(LogKey key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Columns of a log at the time it was written
+     */
+    private record LogState(String eventId, String processorName, ProcessingStatus status, int attemptCount,
+                            int maxAttempts, String errorMessage, String errorStackTrace,
+                            LocalDateTime processingStartTime, LocalDateTime processingEndTime,
+                            LocalDateTime nextRetryTime) {
+
+        static LogState of(EventProcessingLog eLog) {
+            return new LogState(eLog.getEventId(), eLog.getProcessorName(), eLog.getStatus(), eLog.getAttemptCount(),
+                    eLog.getMaxAttempts(), eLog.getErrorMessage(), eLog.getErrorStackTrace(),
+                    eLog.getProcessingStartTime(), eLog.getProcessingEndTime(), eLog.getNextRetryTime());
+        }
+
+        EventProcessingLog toEntity() {
+            EventProcessingLog eLog = new EventProcessingLog();
+            eLog.setEventId(eventId);
+            eLog.setProcessorName(processorName);
+            eLog.setStatus(status);
+            eLog.setAttemptCount(attemptCount);
+            eLog.setMaxAttempts(maxAttempts);
+            eLog.setErrorMessage(errorMessage);
+            eLog.setErrorStackTrace(errorStackTrace);
+            eLog.setProcessingStartTime(processingStartTime);
+            eLog.setProcessingEndTime(processingEndTime);
+            eLog.setNextRetryTime(nextRetryTime);
+            return eLog;
+        }
+    }
+}
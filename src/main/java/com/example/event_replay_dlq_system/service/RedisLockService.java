@@ -4,10 +4,14 @@ package com.example.event_replay_dlq_system.service;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.common.protocol.types.Field;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 @Slf4j
@@ -35,6 +39,46 @@ public class RedisLockService {
     }
 
 
+    /**
+     * Acquire many locks in one pipelined round trip
+     *
+     * @param lockKeys The Lock Keys
+     * @param timeOut  TTL in seconds
+     * @return per key, true if acquired, in the order of lockKeys
+     */
+    public List<Boolean> acquireLocks(List<String> lockKeys, int timeOut) {
+        if (lockKeys.isEmpty()) {
+            return List.of();
+        }
+
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, Object> ops = (RedisOperations<String, Object>) operations;
+                for (String lockKey : lockKeys) {
+                    ops.opsForValue().setIfAbsent(lockKey, "LOCKED", Duration.ofSeconds(timeOut));
+                }
+                return null;
+            }
+        });
+
+        return results.stream().map(Boolean.TRUE::equals).toList();
+    }
+
+    /**
+     * Release many locks with a single DEL
+     *
+     * @param lockKeys The Lock Keys
+     */
+    public void releaseLocks(Collection<String> lockKeys) {
+        if (lockKeys.isEmpty()) {
+            return;
+        }
+        Long deleted = redisTemplate.delete(lockKeys);
+        log.debug("{} of {} locks released", deleted, lockKeys.size());
+    }
+
     /**
      * Release lock manually
      *
@@ -10,14 +10,13 @@ import com.example.event_replay_dlq_system.entity.ReplaySession;
 import com.example.event_replay_dlq_system.enums.ProcessingStatus;
 import com.example.event_replay_dlq_system.enums.ReplaySessionStatus;
 import com.example.event_replay_dlq_system.exception.ReplaySessionNotFoundException;
-import com.example.event_replay_dlq_system.repository.EventRepository;
+import com.example.event_replay_dlq_system.mapper.ReplayMapper;
 import com.example.event_replay_dlq_system.repository.ReplayEventRepository;
 import com.example.event_replay_dlq_system.repository.ReplaySessionRepository;
-import com.example.event_replay_dlq_system.specification.EventSpecification;
+import com.example.event_replay_dlq_system.service.replay.ReplayEngine;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.web.servlet.filter.ApplicationContextHeaderFilter;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -29,18 +28,19 @@ import java.util.UUID;
 @Service
 public class ReplayService {
 
+    private static final List<ReplaySessionStatus> CANCELLABLE =
+            List.of(ReplaySessionStatus.CREATED, ReplaySessionStatus.RUNNING, ReplaySessionStatus.PAUSED);
+
     private final ReplaySessionRepository replaySessionRepository;
     private final ReplayEventRepository replayEventRepository;
-    private final KafkaProducerService kafkaProducerService;
-    private final EventRepository eventRepository;
+    private final ReplayEngine replayEngine;
 
 
     @Autowired
-    public ReplayService(ReplaySessionRepository replaySessionRepository, ReplayEventRepository replayEventRepository, KafkaProducerService kafkaProducerService, EventRepository eventRepository) {
+    public ReplayService(ReplaySessionRepository replaySessionRepository, ReplayEventRepository replayEventRepository, ReplayEngine replayEngine) {
         this.replaySessionRepository = replaySessionRepository;
         this.replayEventRepository = replayEventRepository;
-        this.kafkaProducerService = kafkaProducerService;
-        this.eventRepository = eventRepository;
+        this.replayEngine = replayEngine;
     }
 
     public List<ReplayEvent> getAllReplayEvents() {
@@ -56,6 +56,7 @@ public class ReplayService {
         replaySession.setDescription(request.getDescription());
         replaySession.setCreatedBy(request.getCreatedBy());
         replaySession.setEventFilter(request.getEventFilter());
+        replaySession.setTargetEventsPerSecond(request.getTargetEventsPerSecond());
 
         replaySession.setStatus(ReplaySessionStatus.CREATED);
         replaySession.setTotalEvents(0);
@@ -68,8 +69,9 @@ public class ReplayService {
     }
 
     /**
-     * If session is created than find events related to query
-     * Process them in batch
+     * If session is created than write its replay events with one INSERT ... SELECT over the filter
+     * Hand it to the replay engine, which publishes them in chunks ordered by id
+     * The lease is kept renewed while the events are written, if writing them fails the session is FAILED
      *
      * @param sessionId take session id
      * @return Session
@@ -84,33 +86,44 @@ public class ReplayService {
             throw new IllegalStateException("Session can not started: " + session.getSessionId() + "ONLY CREATED session can be started");
         }
 
+        // the lease is taken before the status changes, a RUNNING session without one is an orphan
+        if (!replayEngine.tryAcquireLease(sessionId)) {
+            throw new IllegalStateException("Replay session is already being started: " + sessionId);
+        }
 
-        EventFilter filter = session.getEventFilter();
-
-        List<Event> events = eventRepository.findAll(EventSpecification.byFilter(filter));
-
-
-        session.setStatus(ReplaySessionStatus.RUNNING);
-        session.setTotalEvents(events.size());
+        // targeted updates only, saving the entity would overwrite the counters the consumers increment
         session.setStartedAt(LocalDateTime.now());
-        replaySessionRepository.save(session);
-
+        if (replaySessionRepository.startIfCreated(sessionId, ReplaySessionStatus.CREATED, ReplaySessionStatus.RUNNING, session.getStartedAt()) == 0) {
+            replayEngine.releaseLease(sessionId);
+            throw new IllegalStateException("Session can not started: " + sessionId + "ONLY CREATED session can be started");
+        }
+        session.setStatus(ReplaySessionStatus.RUNNING);
 
-        List<ReplayEvent> replayEvents = events.stream()
-                .map(event -> {
-                    ReplayEvent re = new ReplayEvent();
-                    re.setSessionId(sessionId);
-                    re.setEventId(event.getEventId());
-                    re.setProcessorName("replay-processor");
-                    re.setStatus(ProcessingStatus.PENDING);
-                    re.setReplayAttemptCount(0);
-                    return re;
+        EventFilter filter = session.getEventFilter();
 
-                }).toList();
+        int totalEvents;
+        try {
+            totalEvents = replayEventRepository.insertSessionMembers(sessionId, filter);
+            session.setTotalEvents(totalEvents);
+            replaySessionRepository.updateTotalEvents(sessionId, totalEvents);
+        } catch (RuntimeException e) {
+            // a RUNNING session without its events would be completed by the next pause and resume
+            log.error("Failed to write the replay events of session {}", sessionId, e);
+            replaySessionRepository.updateStatusIfIn(sessionId, List.of(ReplaySessionStatus.RUNNING), ReplaySessionStatus.FAILED);
+            replayEngine.releaseLease(sessionId);
+            throw e;
+        }
 
-        replayEventRepository.saveAll(replayEvents);
+        if (totalEvents == 0) {
+            session.setStatus(ReplaySessionStatus.COMPLETED);
+            session.setCompletedAt(LocalDateTime.now());
+            replaySessionRepository.updateCompletion(sessionId, ReplaySessionStatus.COMPLETED, session.getCompletedAt());
+            replayEngine.releaseLease(sessionId);
+            log.info("No events match the filter, replay session completed: {}", sessionId);
+            return session;
+        }
 
-        publishEventsInBatches(events, sessionId);
+        replayEngine.submit(session);
 
 
         return session;
@@ -121,25 +134,37 @@ public class ReplayService {
      * @param sessionId
      */
 
-    public void pauseReplaySession(String sessionId) {
+    public ReplaySession pauseReplaySession(String sessionId) {
         ReplaySession session = replaySessionRepository.findBySessionId(sessionId).orElseThrow(
                 () -> new ReplaySessionNotFoundException("Session not found with Id:" + sessionId)
         );
+
+        if (session.getStatus() != ReplaySessionStatus.RUNNING) {
+            throw new IllegalStateException("Can only pause RUNNING sessions");
+        }
+
+        // status only, the running job keeps writing its checkpoint
+        if (replaySessionRepository.updateStatusIfIn(sessionId, List.of(ReplaySessionStatus.RUNNING), ReplaySessionStatus.PAUSED) == 0) {
+            throw new IllegalStateException("Can only pause RUNNING sessions");
+        }
         session.setStatus(ReplaySessionStatus.PAUSED);
 
-        replaySessionRepository.save(session);
+        replayEngine.signal(sessionId, ReplaySessionStatus.PAUSED);
 
         log.info("Replay session paused: {}", sessionId);
+        return session;
     }
 
 
     /**
-     * find the pending events by session id and status
-     * publish them in batches
+     * Continue publishing a paused session from its checkpoint,
+     * events up to the last published id are not queried again
+     * Only the node that takes the session lease may resume it, while the job of another node
+     * is still pausing it holds the lease
      *
      * @param sessionId session id
      */
-    public void resumeReplaySession(String sessionId) {
+    public ReplaySession resumeReplaySession(String sessionId) {
 
         ReplaySession session = replaySessionRepository.findBySessionId(sessionId).orElseThrow(
                 () -> new ReplaySessionNotFoundException("Session not found with Id:" + sessionId)
@@ -149,116 +174,70 @@ public class ReplayService {
             throw new IllegalStateException("Can only resume PAUSED sessions");
         }
 
-        session.setStatus(ReplaySessionStatus.RUNNING);
-        replaySessionRepository.save(session);
-
-        List<ReplayEvent> pendingEvents = replayEventRepository.findBySessionIdAndStatus(sessionId, ProcessingStatus.PENDING);
+        if (!replayEngine.tryAcquireLease(sessionId)) {
+            throw new IllegalStateException("Replay session is still pausing: " + sessionId);
+        }
 
-        if (!pendingEvents.isEmpty()) {
-            log.info("Resuming replay session: {}", sessionId);
+        if (replaySessionRepository.updateStatusIfIn(sessionId, List.of(ReplaySessionStatus.PAUSED), ReplaySessionStatus.RUNNING) == 0) {
+            replayEngine.releaseLease(sessionId);
+            throw new IllegalStateException("Can only resume PAUSED sessions");
+        }
 
-            List<String> eventIds = pendingEvents.stream()
-                    .map(ReplayEvent::getEventId)
-                    .toList();
+        // read again under the lease, the previous job wrote its last checkpoint before giving the lease up
+        session = replaySessionRepository.findBySessionId(sessionId).orElseThrow(
+                () -> new ReplaySessionNotFoundException("Session not found with Id:" + sessionId)
+        );
 
-            List<Event> events = eventRepository.findAllByEventIdIn(eventIds);
+        log.info("Resuming replay session: {} after replay event id {}", sessionId, session.getLastPublishedReplayEventId());
+        replayEngine.submit(session);
 
-            publishEventsInBatches(events, sessionId);
-        }
+        return session;
     }
 
-    public void cancelReplaySession(String sessionId) {
+    /**
+     * Cancel a session that has not finished yet, COMPLETED, FAILED and CANCELLED sessions are final
+     *
+     * @param sessionId session id
+     */
+    public ReplaySession cancelReplaySession(String sessionId) {
         ReplaySession session = replaySessionRepository.findBySessionId(sessionId).orElseThrow(
                 () -> new ReplaySessionNotFoundException("Session not found with Id:" + sessionId)
         );
+
+        if (replaySessionRepository.updateStatusIfIn(sessionId, CANCELLABLE, ReplaySessionStatus.CANCELLED) == 0) {
+            throw new IllegalStateException("Can only cancel CREATED, RUNNING or PAUSED sessions");
+        }
         session.setStatus(ReplaySessionStatus.CANCELLED);
-        replaySessionRepository.save(session);
+
+        replayEngine.signal(sessionId, ReplaySessionStatus.CANCELLED);
         log.info("Replay session cancelled: {}", sessionId);
 
+        return session;
     }
 
     public void completeReplaySession(String sessionId) {
         ReplaySession session = replaySessionRepository.findBySessionId(sessionId).orElseThrow(
                 () -> new ReplaySessionNotFoundException("Session not found with Id:" + sessionId)
         );
-        session.setStatus(ReplaySessionStatus.COMPLETED);
-        session.setCompletedAt(LocalDateTime.now());
-
-        replaySessionRepository.save(session);
+        replaySessionRepository.updateCompletion(session.getSessionId(), ReplaySessionStatus.COMPLETED, LocalDateTime.now());
 
         log.info("Replay session completed: {}", sessionId);
     }
 
 
+    /**
+     * Progress is read from the session counters maintained by the replay consumer,
+     * no replay event is counted here
+     *
+     * @param sessionId session id
+     * @return progress of the session
+     */
     public ReplayProgressResponseDTO getReplayProgress(String sessionId) {
 
         ReplaySession session = replaySessionRepository.findBySessionId(sessionId).orElseThrow(
                 () -> new ReplaySessionNotFoundException("Session not found with Id:" + sessionId)
         );
 
-
-        long pending = replayEventRepository.countBySessionIdAndStatus(sessionId, ProcessingStatus.PENDING);
-        long success = replayEventRepository.countBySessionIdAndStatus(sessionId, ProcessingStatus.SUCCESS);
-        long failed = replayEventRepository.countBySessionIdAndStatus(sessionId, ProcessingStatus.FAILED);
-
-
-        int processed = (int) (success + failed);
-        double progress = session.getTotalEvents() > 0 ? ((double) (processed / session.getTotalEvents()) * 100) : 0;
-
-        return ReplayProgressResponseDTO.builder()
-                .sessionId(sessionId)
-                .name(session.getName())
-                .status(session.getStatus())
-                .totalEvents(session.getTotalEvents())
-                .processedEvents(processed)
-                .successfulEvents((int) success)
-                .failedEvents((int) failed)
-                .pendingEvents((int) pending)
-                .progressPercentage(progress)
-                .startedAt(session.getStartedAt())
-                .endedAt(session.getCompletedAt())
-                .build();
-    }
-
-    @Async
-    protected void publishEventsInBatches(List<Event> events, String sessionId) {
-        final int batchSize = 100;
-        int totalBatch = (int) Math.ceil((double) events.size() / batchSize);
-
-        int publishedCount = 0;
-        log.info("Publishing {} events in {} batches for replay session: {}", events.size(), totalBatch, batchSize);
-
-        for (int i = 0; i < events.size(); i += batchSize) {
-
-            ReplaySession session = replaySessionRepository.findBySessionId(sessionId).orElseThrow();
-
-            if (session.getStatus() != ReplaySessionStatus.RUNNING) {
-                log.info("⏸️ Replay session paused/cancelled: {}", sessionId);
-                break;
-            }
-
-            List<Event> batch = events.subList(i, Math.min(i + batchSize, events.size()));
-
-            for (Event event : batch) {
-                kafkaProducerService.sendReplayEvent(event);
-                publishedCount++;
-            }
-
-
-            log.info("📤 Published batch {}/{} ({} events, total: {}/{})",
-                    (i / batchSize) + 1, totalBatch, batch.size(),
-                    publishedCount, events.size());
-
-
-            try {
-                Thread.sleep(100);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                log.warn("⚠️ Publishing interrupted for session: {}", sessionId);
-                break;
-            }
-        }
-
-        log.info("All events published for replay session: {}", sessionId);
+        return ReplayMapper.mapReplayProgressResponseDTO(session);
     }
 }
@@ -3,137 +3,312 @@ package com.example.event_replay_dlq_system.service;
 
 import com.example.event_replay_dlq_system.entity.Event;
 import com.example.event_replay_dlq_system.entity.EventProcessingLog;
-import com.example.event_replay_dlq_system.entity.ReplayEvent;
-import com.example.event_replay_dlq_system.enums.ProcessingStatus;
 import com.example.event_replay_dlq_system.repository.EventProcessingLogRepository;
+import com.example.event_replay_dlq_system.service.retry.RetryBackoffPolicy;
+import com.example.event_replay_dlq_system.service.retry.RetryBudget;
+import com.example.event_replay_dlq_system.service.retry.RetryShardLeases;
+import com.example.event_replay_dlq_system.service.retry.TieredRetryTopics;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Delay queue for retries on redis, split into shards by member hash
+ * event:retry:{shard}:queue      sorted set, member eventId:processorName, score = due time in epoch millis
+ * event:retry:{shard}:inflight   sorted set of claimed members, score = lease expiry
+ * event:retry:{shard}:payloads   hash member -> event json
+ * Each node only drains the shards it holds a lease on (RetryShardLeases), so dispatch scales with the nodes.
+ * Due members are claimed in batches by one lua script (ZRANGEBYSCORE + ZREM) that moves them to the inflight set,
+ * they leave it once the retry topic acked them. A member whose lease expired goes back to the queue,
+ * so a retry is never dropped when a node dies or kafka is down between claim and publish.
+ * With event-system.retry.backend: topics retries go to the delay-tier topics of TieredRetryTopics instead.
+ */
 @Service
 @Slf4j
 public class RetrySchedulerService {
 
 
+    /**
+     * ARGV: member, due at, event json, schedule channel, shard:dueAt
+     * the shard owner's RetryWheelDispatcher hears about the new due time on the channel
+     */
+    static final RedisScript<Long> SCHEDULE_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('HSET', KEYS[3], ARGV[1], ARGV[3])
+            redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+            redis.call('PUBLISH', ARGV[4], ARGV[5])
+            return 1
+            """, Long.class);
+
+    /**
+     * ARGV: now, batch size, lease expiry
+     * returns member, json, member, json ...
+     */
+    @SuppressWarnings("rawtypes")
+    static final RedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>("""
+            local expired = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))
+            for _, member in ipairs(expired) do
+                redis.call('ZREM', KEYS[2], member)
+                redis.call('ZADD', KEYS[1], 'NX', ARGV[1], member)
+            end
+            local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))
+            local claimed = {}
+            for _, member in ipairs(due) do
+                redis.call('ZREM', KEYS[1], member)
+                local payload = redis.call('HGET', KEYS[3], member)
+                if payload then
+                    redis.call('ZADD', KEYS[2], ARGV[3], member)
+                    table.insert(claimed, member)
+                    table.insert(claimed, payload)
+                end
+            end
+            return claimed
+            """, List.class);
+
+    /**
+     * ARGV: published members, a member scheduled again meanwhile keeps its payload
+     */
+    static final RedisScript<Long> ACK_SCRIPT = new DefaultRedisScript<>("""
+            for _, member in ipairs(ARGV) do
+                if redis.call('ZREM', KEYS[2], member) == 1 and not redis.call('ZSCORE', KEYS[1], member) then
+                    redis.call('HDEL', KEYS[3], member)
+                end
+            end
+            return #ARGV
+            """, Long.class);
+
+    /**
+     * ARGV: member
+     */
+    static final RedisScript<Long> CANCEL_SCRIPT = new DefaultRedisScript<>("""
+            local removed = redis.call('ZREM', KEYS[1], ARGV[1]) + redis.call('ZREM', KEYS[2], ARGV[1])
+            redis.call('HDEL', KEYS[3], ARGV[1])
+            return removed
+            """, Long.class);
+
+
     private final EventProcessingLogRepository eventProcessingLogRepository;
-    private final RedisTemplate<String, Object> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
     private final KafkaProducerService kafkaProducerService;
     private final ObjectMapper objectMapper;
+    private final TieredRetryTopics tieredRetryTopics;
+    private final RetryShardLeases retryShardLeases;
+    private final RetryBackoffPolicy retryBackoffPolicy;
+    private final RetryBudget retryBudget;
+
+    @Value("${event-system.retry.batch-size}")
+    private int batchSize;
+
+    @Value("${event-system.retry.lease-ms}")
+    private long leaseMs;
+
+    @Value("${event-system.retry.shards}")
+    private int shards;
+
+    @Value("${event-system.retry.wheel.channel}")
+    private String scheduleChannel;
 
     @Autowired
-    public RetrySchedulerService(EventProcessingLogRepository eventProcessingLogRepository, RedisTemplate<String, Object> redisTemplate, KafkaProducerService kafkaProducerService, ObjectMapper objectMapper) {
+    public RetrySchedulerService(EventProcessingLogRepository eventProcessingLogRepository, StringRedisTemplate stringRedisTemplate, KafkaProducerService kafkaProducerService, ObjectMapper objectMapper, TieredRetryTopics tieredRetryTopics, RetryShardLeases retryShardLeases, RetryBackoffPolicy retryBackoffPolicy, RetryBudget retryBudget) {
         this.eventProcessingLogRepository = eventProcessingLogRepository;
-        this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
         this.kafkaProducerService = kafkaProducerService;
         this.objectMapper = objectMapper;
+        this.tieredRetryTopics = tieredRetryTopics;
+        this.retryShardLeases = retryShardLeases;
+        this.retryBackoffPolicy = retryBackoffPolicy;
+        this.retryBudget = retryBudget;
     }
 
 
     /**
-     * Scheduling exponential backoff for a specific based on attempt count
-     * 2^n <= 60
-     * If process fails -> calculate retry, with TTL = delay
+     * Scheduling jittered exponential backoff for a specific based on attempt count (RetryBackoffPolicy)
+     * If process fails -> calculate retry, due at now + delay
+     * A retry over the processor's retry budget is pushed back further, never dropped
      *
      * @param event         scheduling retry for specific event
      * @param processorName for a specific processor
      * @param attemptCount  current attempt
      */
     protected void scheduleRetry(Event event, String processorName, int attemptCount) {
-        try {
+        Duration delay = retryBackoffPolicy.delay(attemptCount).plus(retryBudget.reserve(processorName));
 
-            int delay = Math.min((int) (Math.pow(2, attemptCount)), 60);
+        enqueue(event, processorName, delay);
 
-            String retryKey = "event:retry:" + event.getEventId() + ":" + processorName;
+        EventProcessingLog eLog = eventProcessingLogRepository.getByEventIdAndProcessorName(event.getEventId(), processorName).orElseThrow();
+        LocalDateTime nextRetryTime = LocalDateTime.now().plus(delay);
+        eLog.setNextRetryTime(nextRetryTime);
 
+        eventProcessingLogRepository.save(eLog);
 
-            String eventJson = objectMapper.writeValueAsString(event);
-            redisTemplate.opsForValue().set(retryKey, eventJson, Duration.ofSeconds(delay));
+        log.info("Scheduler retry for event {} with delay {}ms (attempt {})", event.getEventId(), delay.toMillis(), attemptCount);
+    }
 
-            Long ttl = redisTemplate.getExpire(retryKey);
-            log.info("Wrote retry key {} (ttl={}s) valuePresent={}", retryKey, ttl, redisTemplate.hasKey(retryKey));
+    /**
+     * Redeliver the event through the retry topic after the delay, without touching its processing log
+     * Used while the processor's circuit is open, so parked events keep their attempt count
+     *
+     * @param event         event to park
+     * @param processorName processor whose circuit is open
+     * @param delay         time until the processor may be called again
+     */
+    protected void deferRetry(Event event, String processorName, Duration delay) {
+        enqueue(event, processorName, delay);
 
-            EventProcessingLog eLog = eventProcessingLogRepository.getByEventIdAndProcessorName(event.getEventId(), processorName).orElseThrow();
-            LocalDateTime nextRetryTime = LocalDateTime.now().plusSeconds(delay);
-            eLog.setNextRetryTime(nextRetryTime);
+        log.info("Parked event {} for {} ({}ms)", event.getEventId(), processorName, delay.toMillis());
+    }
 
-            eventProcessingLogRepository.save(eLog);
+    private void enqueue(Event event, String processorName, Duration delay) {
+        if (tieredRetryTopics.isEnabled()) {
+            tieredRetryTopics.publish(event, delay);
+            return;
+        }
+        try {
+            String eventJson = objectMapper.writeValueAsString(event);
+            long dueAt = System.currentTimeMillis() + delay.toMillis();
 
-            log.info("Scheduler retry for event {} with delay {}s (attempt {})", event.getEventId(), delay, attemptCount);
+            String member = member(event.getEventId(), processorName);
+            int shard = shardOf(member);
+            stringRedisTemplate.execute(SCHEDULE_SCRIPT, keys(shard), member, String.valueOf(dueAt), eventJson,
+                    scheduleChannel, shard + ":" + dueAt);
         } catch (JsonProcessingException e) {
             log.error("Failed to serialize event for retry {}", event.getEventId());
             throw new RuntimeException("Failed to serialize event for retry ", e);
         }
-
     }
 
-    @Scheduled(fixedRate = 1000)
+    /**
+     * Drains the shards this node owns
+     * With the timing wheel enabled this is only the safety net for missed schedule messages
+     */
+    @Scheduled(fixedDelayString = "${event-system.retry.poll-interval-ms}")
     public void processExpiredRetries() {
+        if (tieredRetryTopics.isEnabled()) {
+            return;
+        }
+        for (int shard : retryShardLeases.ownedShards()) {
+            drainShard(shard);
+        }
+    }
+
+    /**
+     * Keeps claiming full batches of the shard, stops once a batch comes back short
+     *
+     * @param shard queue shard
+     */
+    public void drainShard(int shard) {
         try {
-            Set<String> redisRetryKeys = redisTemplate.keys("event:retry:*");
-            if (redisRetryKeys.isEmpty()) {
-                // log.debug("No retry keys found");
-                return;
-            }
+            int claimed;
+            do {
+                claimed = publishDueRetries(shard);
+            } while (claimed == batchSize);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Failed to process expired retries of shard {}", shard, e);
+        }
+    }
 
-            log.debug("Retry keys: {}", redisRetryKeys.size());
+    /**
+     * Claim one batch of due retries and publish them to the retry topic
+     * Only members acked by kafka are removed, the others come back once their lease expires
+     *
+     * @param shard queue shard
+     * @return number of claimed retries
+     */
+    int publishDueRetries(int shard) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        List<String> keys = keys(shard);
+
+        @SuppressWarnings("unchecked")
+        List<String> claimed = stringRedisTemplate.execute(CLAIM_SCRIPT, keys,
+                String.valueOf(now), String.valueOf(batchSize), String.valueOf(now + leaseMs));
+        if (claimed == null || claimed.isEmpty()) {
+            return 0;
+        }
 
-            for (String retryKey : redisRetryKeys) {
-                processRetryKey(retryKey);
+        List<String> done = new ArrayList<>();
+        Map<String, CompletableFuture<?>> sends = new LinkedHashMap<>();
+        for (int i = 0; i + 1 < claimed.size(); i += 2) {
+            String member = claimed.get(i);
+            try {
+                Event event = objectMapper.readValue(claimed.get(i + 1), Event.class);
+                sends.put(member, kafkaProducerService.sendRetryEventWithAck(event));
+            } catch (JsonProcessingException e) {
+                // would fail the same way on every claim
+                log.error("Dropping unreadable retry {}", member, e);
+                done.add(member);
+            } catch (Exception e) {
+                log.error("Failed to republish retry {}", member, e);
             }
-        } catch (Exception e) {
-            log.error("Failed to process expired retries", e);
         }
-    }
 
-    private void processRetryKey(String retryKey) {
         try {
-            long ttl = redisTemplate.getExpire(retryKey);
-            // key doesn't exist
-            if (ttl == -2) {
-                return;
+            CompletableFuture.allOf(sends.values().toArray(CompletableFuture[]::new)).get(leaseMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (Exception e) {
+            log.warn("Not every retry was acked by kafka, the rest is claimed again after the lease", e);
+        }
+        int acked = 0;
+        for (Map.Entry<String, CompletableFuture<?>> send : sends.entrySet()) {
+            if (send.getValue().isDone() && !send.getValue().isCompletedExceptionally()) {
+                done.add(send.getKey());
+                acked++;
             }
+        }
 
-
-            if (ttl <= 1) {
-                String eventJson = (String) redisTemplate.opsForValue().get(retryKey);
-
-                if (eventJson == null) {
-                    log.debug("Key already expired or deleted {}", retryKey);
-                    return;
-                }
-
-                Event event = objectMapper.readValue(eventJson, Event.class);
+        if (!done.isEmpty()) {
+            stringRedisTemplate.execute(ACK_SCRIPT, keys, done.toArray());
+        }
+        log.info("Republished {} of {} due retries to kafka", acked, claimed.size() / 2);
+        return claimed.size() / 2;
+    }
 
 
-                // Publish to retry topic
-                kafkaProducerService.sendRetryEvent(event);
+    /**
+     * Only the redis backend can cancel, a record on a tier topic is forwarded anyway
+     * and dropped by the processing log check once it is delivered
+     */
+    public void cancelRetry(String eventId, String processorName) {
+        String member = member(eventId, processorName);
 
-                redisTemplate.delete(retryKey);
-                log.info("Republished retry event to kafka {}", event.getEventId());
-            }
-        } catch (Exception e) {
-            log.error("Failed to process expired retries", e);
+        Long removed = stringRedisTemplate.execute(CANCEL_SCRIPT, keys(shardOf(member)), member);
+        if (removed != null && removed > 0) {
+            log.info("Cancelled retry event {}", member);
         }
     }
 
+    private static String member(String eventId, String processorName) {
+        return eventId + ":" + processorName;
+    }
 
-    public void cancelRetry(String eventId, String processorName) {
-        String retryKey = "event:retry:" + eventId + ":" + processorName;
+    int shardOf(String member) {
+        return Math.floorMod(member.hashCode(), shards);
+    }
 
-        Boolean deleted = redisTemplate.delete(retryKey);
-        if (deleted) {
-            log.info("Cancelled retry event {}", retryKey);
-        }
+    /**
+     * queue, inflight and payload keys of a shard, hash tagged so they stay in one cluster slot
+     */
+    public static List<String> keys(int shard) {
+        String prefix = "event:retry:{" + shard + "}:";
+        return List.of(prefix + "queue", prefix + "inflight", prefix + "payloads");
     }
 
 }
@@ -0,0 +1,154 @@
+package com.example.event_replay_dlq_system.service.breaker;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Count-based circuit breaker for one processor
+ * CLOSED: every call is permitted, the outcomes of the last windowSize calls are kept and
+ * the breaker opens once at least minimumCalls were seen and the failure rate reaches the threshold.
+ * OPEN: no call is permitted for openDuration.
+ * HALF_OPEN: one probe is permitted per probeInterval, right away after a successful probe;
+ * probeSuccesses successful probes in a row close the breaker, a failed probe opens it again.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * @param windowSize           calls whose outcome is kept while closed
+     * @param minimumCalls         calls needed before the failure rate is evaluated
+     * @param failureRateThreshold failure rate that opens the breaker, e.g. 0.5
+     * @param openDurationMillis   how long the breaker stays open before probing
+     * @param probeIntervalMillis  time between probes while half open
+     * @param probeSuccesses       successful probes needed to close
+     */
+    public record Settings(int windowSize, int minimumCalls, double failureRateThreshold,
+                           long openDurationMillis, long probeIntervalMillis, int probeSuccesses) {
+    }
+
+    private final Settings settings;
+    private final LongSupplier clock;
+
+    // guarded by this
+    private final boolean[] outcomes;
+    private int position;
+    private int calls;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openUntil;
+    private long nextProbeAt;
+    private int successfulProbes;
+
+    public CircuitBreaker(Settings settings) {
+        this(settings, System::currentTimeMillis);
+    }
+
+    CircuitBreaker(Settings settings, LongSupplier clock) {
+        if (settings.windowSize() < 1 || settings.minimumCalls() > settings.windowSize()) {
+            throw new IllegalArgumentException("windowSize must be positive and at least minimumCalls");
+        }
+        this.settings = settings;
+        this.clock = clock;
+        this.outcomes = new boolean[settings.windowSize()];
+    }
+
+    /**
+     * @return true if a call may go to the processor now
+     */
+    public synchronized boolean tryAcquirePermission() {
+        long now = clock.getAsLong();
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (now < openUntil) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            successfulProbes = 0;
+            nextProbeAt = now;
+        }
+        if (now < nextProbeAt) {
+            return false;
+        }
+        nextProbeAt = now + settings.probeIntervalMillis();
+        return true;
+    }
+
+    /**
+     * Give back a permission that was not used for a call, while half open the next probe may go right away
+     */
+    public synchronized void releasePermission() {
+        if (state == State.HALF_OPEN) {
+            nextProbeAt = clock.getAsLong();
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++successfulProbes >= settings.probeSuccesses()) {
+                close();
+            } else {
+                nextProbeAt = clock.getAsLong();
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (calls >= settings.minimumCalls() && (double) failures / calls >= settings.failureRateThreshold()) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * @return millis until a call may be permitted again, 0 when closed
+     */
+    public synchronized long millisUntilPermitted() {
+        long now = clock.getAsLong();
+        return switch (state) {
+            case CLOSED -> 0;
+            case OPEN -> Math.max(0, openUntil - now);
+            case HALF_OPEN -> Math.max(0, nextProbeAt - now);
+        };
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void record(boolean failed) {
+        if (calls == outcomes.length) {
+            if (outcomes[position]) {
+                failures--;
+            }
+        } else {
+            calls++;
+        }
+        outcomes[position] = failed;
+        if (failed) {
+            failures++;
+        }
+        position = (position + 1) % outcomes.length;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openUntil = clock.getAsLong() + settings.openDurationMillis();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        position = 0;
+        calls = 0;
+        failures = 0;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.event_replay_dlq_system.service.breaker;
+
+import com.example.event_replay_dlq_system.exception.ProcessingException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One CircuitBreaker per processor
+ * The state is published as the processor.circuit.state gauge (0 closed, 1 open, 2 half open) tagged by processor
+ * Only downstream or unexpected failures count against a breaker: a ProcessingException is a business
+ * rejection of the event by a processor that answered, like for the bulkheads
+ */
+@Slf4j
+@Component
+public class ProcessorCircuitBreakers {
+
+    private final MeterRegistry meterRegistry;
+    private final CircuitBreaker.Settings settings;
+    private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    @Value("${event-system.processing.circuit-breaker.enabled}")
+    private boolean enabled;
+
+    @Autowired
+    public ProcessorCircuitBreakers(MeterRegistry meterRegistry,
+                                    @Value("${event-system.processing.circuit-breaker.window-size}") int windowSize,
+                                    @Value("${event-system.processing.circuit-breaker.minimum-calls}") int minimumCalls,
+                                    @Value("${event-system.processing.circuit-breaker.failure-rate-threshold}") double failureRateThreshold,
+                                    @Value("${event-system.processing.circuit-breaker.open-duration-ms}") long openDurationMillis,
+                                    @Value("${event-system.processing.circuit-breaker.probe-interval-ms}") long probeIntervalMillis,
+                                    @Value("${event-system.processing.circuit-breaker.probe-successes}") int probeSuccesses) {
+        this.meterRegistry = meterRegistry;
+        this.settings = new CircuitBreaker.Settings(windowSize, minimumCalls, failureRateThreshold,
+                openDurationMillis, probeIntervalMillis, probeSuccesses);
+    }
+
+    /**
+     * @return true if the processor may be called now
+     */
+    public boolean tryAcquirePermission(String processorName) {
+        return !enabled || breaker(processorName).tryAcquirePermission();
+    }
+
+    /**
+     * Give back a permission whose call was not made, e.g. the event turned out to be processed already
+     */
+    public void releasePermission(String processorName) {
+        if (enabled) {
+            breaker(processorName).releasePermission();
+        }
+    }
+
+    /**
+     * @param failure failure of the call, null on success
+     */
+    public void onResult(String processorName, Throwable failure) {
+        if (!enabled) {
+            return;
+        }
+        CircuitBreaker breaker = breaker(processorName);
+        CircuitBreaker.State before = breaker.getState();
+        if (!isDownstreamFailure(failure)) {
+            breaker.onSuccess();
+        } else {
+            breaker.onFailure();
+        }
+        CircuitBreaker.State after = breaker.getState();
+        if (before != after) {
+            log.warn("Circuit of {} moved from {} to {}", processorName, before, after);
+        }
+    }
+
+    public long millisUntilPermitted(String processorName) {
+        return enabled ? breaker(processorName).millisUntilPermitted() : 0;
+    }
+
+    private static boolean isDownstreamFailure(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        return cause != null && !(cause instanceof ProcessingException);
+    }
+
+    private CircuitBreaker breaker(String processorName) {
+        return breakers.computeIfAbsent(processorName, name -> {
+            CircuitBreaker breaker = new CircuitBreaker(settings);
+            Gauge.builder("processor.circuit.state", breaker, b -> b.getState().ordinal())
+                    .tag("processor", name)
+                    .register(meterRegistry);
+            return breaker;
+        });
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.event_replay_dlq_system.service.bulkhead;
+
+import com.example.event_replay_dlq_system.exception.ProcessingException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Concurrency limit for one processor that adapts to its latency and error rate (AIMD)
+ * Every completion that is neither slow nor failing adds 1/limit, so the limit grows by one per round of calls.
+ * A call slower than latencyTolerance x the baseline latency, or an unexpected error rate above maxErrorRate,
+ * multiplies the limit by backoffRatio, at most once per baseline latency.
+ * The baseline is the lowest latency of the previous window of latencyWindow calls.
+ * Calls over the limit wait in a FIFO queue; once the queue is full, submit blocks the caller.
+ */
+public class AdaptiveBulkhead {
+
+    private static final double ERROR_RATE_WEIGHT = 0.1;
+
+    private final Settings settings;
+    private final Executor executor;
+    private final LongSupplier nanoClock;
+    private final Semaphore admitted;
+
+    // guarded by this
+    private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+    private double errorRate;
+    private long baselineNanos = Long.MAX_VALUE;
+    private long windowMinNanos = Long.MAX_VALUE;
+    private int windowSamples;
+    private long lastDecreaseAt;
+
+    /**
+     * @param initialLimit     starting limit
+     * @param minLimit         the limit never drops below it
+     * @param maxLimit         the limit never grows above it
+     * @param maxQueue         calls waiting beyond the limit before submit blocks
+     * @param backoffRatio     multiplicative decrease, e.g. 0.9
+     * @param latencyTolerance a call slower than baseline x tolerance signals overload
+     * @param latencyWindow    calls per baseline window
+     * @param maxErrorRate     smoothed rate of unexpected errors that signals overload
+     */
+    public record Settings(int initialLimit, int minLimit, int maxLimit, int maxQueue,
+                           double backoffRatio, double latencyTolerance, int latencyWindow, double maxErrorRate) {
+    }
+
+    public AdaptiveBulkhead(Settings settings, Executor executor) {
+        this(settings, executor, System::nanoTime);
+    }
+
+    AdaptiveBulkhead(Settings settings, Executor executor, LongSupplier nanoClock) {
+        if (settings.minLimit() < 1 || settings.minLimit() > settings.maxLimit()) {
+            throw new IllegalArgumentException("limits must satisfy 1 <= minLimit <= maxLimit");
+        }
+        this.settings = settings;
+        this.executor = executor;
+        this.nanoClock = nanoClock;
+        this.admitted = new Semaphore(settings.maxLimit() + settings.maxQueue());
+        this.limit = Math.max(settings.minLimit(), Math.min(settings.maxLimit(), settings.initialLimit()));
+        this.lastDecreaseAt = nanoClock.getAsLong();
+    }
+
+    /**
+     * Run the task now if under the limit, otherwise once a slot frees up
+     * A task started right away runs on the caller thread, a queued one on the executor
+     *
+     * @param task starts the call
+     * @return completes with the call
+     * @throws InterruptedException if interrupted while the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Supplier<? extends CompletionStage<T>> task) throws InterruptedException {
+        admitted.acquire();
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> run(task, result);
+        boolean runNow;
+        synchronized (this) {
+            runNow = inFlight < (int) limit;
+            if (runNow) {
+                inFlight++;
+            } else {
+                waiting.addLast(start);
+            }
+        }
+        if (runNow) {
+            start.run();
+        }
+        return result;
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueueDepth() {
+        return waiting.size();
+    }
+
+    private <T> void run(Supplier<? extends CompletionStage<T>> task, CompletableFuture<T> result) {
+        long startedAt = nanoClock.getAsLong();
+        CompletionStage<T> stage;
+        try {
+            stage = task.get();
+        } catch (Throwable e) {
+            stage = CompletableFuture.failedFuture(e);
+        }
+
+        stage.whenComplete((value, ex) -> {
+            onComplete(nanoClock.getAsLong() - startedAt, ex != null && isUnexpected(ex));
+            if (ex != null) {
+                result.completeExceptionally(ex);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private void onComplete(long latencyNanos, boolean failed) {
+        List<Runnable> toStart = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            errorRate += ERROR_RATE_WEIGHT * ((failed ? 1 : 0) - errorRate);
+            updateBaseline(latencyNanos);
+
+            long now = nanoClock.getAsLong();
+            boolean overloaded = errorRate > settings.maxErrorRate()
+                    || latencyNanos > baselineNanos * settings.latencyTolerance();
+            if (overloaded) {
+                if (now - lastDecreaseAt >= baselineNanos) {
+                    limit = Math.max(settings.minLimit(), limit * settings.backoffRatio());
+                    lastDecreaseAt = now;
+                }
+            } else if (inFlight + 1 >= (int) limit) {
+                // only grow a limit that is actually used
+                limit = Math.min(settings.maxLimit(), limit + 1 / limit);
+            }
+
+            while (inFlight < (int) limit && !waiting.isEmpty()) {
+                inFlight++;
+                toStart.add(waiting.pollFirst());
+            }
+        }
+        admitted.release();
+        toStart.forEach(executor::execute);
+    }
+
+    private void updateBaseline(long latencyNanos) {
+        windowMinNanos = Math.min(windowMinNanos, latencyNanos);
+        if (++windowSamples >= settings.latencyWindow()) {
+            baselineNanos = windowMinNanos;
+            windowMinNanos = Long.MAX_VALUE;
+            windowSamples = 0;
+        } else {
+            baselineNanos = Math.min(baselineNanos, latencyNanos);
+        }
+    }
+
+    /**
+     * Business failures (ProcessingException) say nothing about the downstream being overloaded
+     */
+    private static boolean isUnexpected(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return !(cause instanceof ProcessingException);
+    }
+}
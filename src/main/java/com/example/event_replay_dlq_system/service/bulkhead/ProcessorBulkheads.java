@@ -0,0 +1,87 @@
+package com.example.event_replay_dlq_system.service.bulkhead;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * One AdaptiveBulkhead per processor, so a slow processor only uses up its own share of the consumers
+ * Limit, in-flight calls and queue depth are published as processor.bulkhead.* gauges tagged by processor,
+ * readable through the actuator metrics endpoint
+ */
+@Slf4j
+@Component
+public class ProcessorBulkheads {
+
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, AdaptiveBulkhead> bulkheads = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AdaptiveBulkhead.Settings settings;
+
+    @Value("${event-system.processing.bulkhead.enabled}")
+    private boolean enabled;
+
+    @Autowired
+    public ProcessorBulkheads(MeterRegistry meterRegistry,
+                              @Value("${event-system.processing.bulkhead.initial-limit}") int initialLimit,
+                              @Value("${event-system.processing.bulkhead.min-limit}") int minLimit,
+                              @Value("${event-system.processing.bulkhead.max-limit}") int maxLimit,
+                              @Value("${event-system.processing.bulkhead.max-queue}") int maxQueue,
+                              @Value("${event-system.processing.bulkhead.backoff-ratio}") double backoffRatio,
+                              @Value("${event-system.processing.bulkhead.latency-tolerance}") double latencyTolerance,
+                              @Value("${event-system.processing.bulkhead.latency-window}") int latencyWindow,
+                              @Value("${event-system.processing.bulkhead.max-error-rate}") double maxErrorRate) {
+        this.meterRegistry = meterRegistry;
+        this.settings = new AdaptiveBulkhead.Settings(initialLimit, minLimit, maxLimit, maxQueue,
+                backoffRatio, latencyTolerance, latencyWindow, maxErrorRate);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.close();
+    }
+
+    /**
+     * Run the call within the processor's bulkhead, or directly when bulkheads are disabled
+     *
+     * @param processorName processor
+     * @param call          starts the processor call
+     * @return completes with the call
+     */
+    public <T> CompletableFuture<T> submit(String processorName, Supplier<? extends CompletionStage<T>> call) throws InterruptedException {
+        if (!enabled) {
+            return call.get().toCompletableFuture();
+        }
+        return bulkheads.computeIfAbsent(processorName, this::create).submit(call);
+    }
+
+    private AdaptiveBulkhead create(String processorName) {
+        AdaptiveBulkhead bulkhead = new AdaptiveBulkhead(settings, executor);
+
+        Gauge.builder("processor.bulkhead.limit", bulkhead, AdaptiveBulkhead::getLimit)
+                .tag("processor", processorName)
+                .register(meterRegistry);
+        Gauge.builder("processor.bulkhead.in.flight", bulkhead, AdaptiveBulkhead::getInFlight)
+                .tag("processor", processorName)
+                .register(meterRegistry);
+        Gauge.builder("processor.bulkhead.queue.depth", bulkhead, AdaptiveBulkhead::getQueueDepth)
+                .tag("processor", processorName)
+                .register(meterRegistry);
+
+        log.info("Created bulkhead for {} with limit {}", processorName, bulkhead.getLimit());
+        return bulkhead;
+    }
+}
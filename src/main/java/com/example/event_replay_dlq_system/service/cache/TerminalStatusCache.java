@@ -0,0 +1,101 @@
+package com.example.event_replay_dlq_system.service.cache;
+
+import com.example.event_replay_dlq_system.enums.ProcessingStatus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded in-process cache of SUCCESS processing outcomes, keyed by eventId:processorName
+ * DLQ is not cached: a manual DLQ retry resets the log, and a node still holding DLQ would drop the redelivered event
+ * Least recently used entries are evicted beyond maxSize, entries expire after ttl.
+ * A Bloom filter of cached keys answers "definitely never cached" without taking the cache lock;
+ * it is replaced by an empty one after expectedInsertions puts, which only costs cache misses.
+ */
+public class TerminalStatusCache {
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final LongSupplier nanoClock;
+
+    private final Map<String, Entry> entries;
+    private final AtomicLong insertions = new AtomicLong();
+    private volatile BloomFilter cachedKeys;
+
+    public TerminalStatusCache(int maxSize, long ttlSeconds, long expectedInsertions, double falsePositiveRate) {
+        this(maxSize, ttlSeconds, expectedInsertions, falsePositiveRate, System::nanoTime);
+    }
+
+    TerminalStatusCache(int maxSize, long ttlSeconds, long expectedInsertions, double falsePositiveRate, LongSupplier nanoClock) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.nanoClock = nanoClock;
+        this.cachedKeys = new BloomFilter(expectedInsertions, falsePositiveRate);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > TerminalStatusCache.this.maxSize;
+            }
+        };
+    }
+
+    public static String key(String eventId, String processorName) {
+        return eventId + ":" + processorName;
+    }
+
+    public Optional<ProcessingStatus> get(String eventId, String processorName) {
+        String key = key(eventId, processorName);
+        if (!cachedKeys.mightContain(key)) {
+            return Optional.empty();
+        }
+
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return Optional.empty();
+            }
+            if (nanoClock.getAsLong() - entry.cachedAt() > ttlNanos) {
+                entries.remove(key);
+                return Optional.empty();
+            }
+            return Optional.of(entry.status());
+        }
+    }
+
+    /**
+     * Cache a SUCCESS outcome, other statuses are ignored
+     */
+    public void put(String eventId, String processorName, ProcessingStatus status) {
+        if (status != ProcessingStatus.SUCCESS) {
+            return;
+        }
+
+        String key = key(eventId, processorName);
+        synchronized (entries) {
+            entries.put(key, new Entry(status, nanoClock.getAsLong()));
+        }
+
+        if (insertions.incrementAndGet() > expectedInsertions) {
+            cachedKeys = new BloomFilter(expectedInsertions, falsePositiveRate);
+            insertions.set(0);
+        }
+        cachedKeys.put(key);
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private record Entry(ProcessingStatus status, long cachedAt) {
+    }
+}
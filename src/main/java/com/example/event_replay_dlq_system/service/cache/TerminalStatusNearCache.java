@@ -0,0 +1,56 @@
+package com.example.event_replay_dlq_system.service.cache;
+
+import com.example.event_replay_dlq_system.enums.ProcessingStatus;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+/**
+ * Node-local near cache of SUCCESS processing outcomes
+ * Lets duplicates and redeliveries of finished events skip the redis lock and the processing log lookup.
+ * Only SUCCESS is final, DLQ logs can be reset by a manual retry and are always read from the database,
+ * so an entry never has to be invalidated and nodes do not coordinate.
+ */
+@Service
+public class TerminalStatusNearCache {
+
+    private TerminalStatusCache cache;
+
+    @Value("${event-system.processing.terminal-cache.enabled}")
+    private boolean enabled;
+
+    @Value("${event-system.processing.terminal-cache.max-size}")
+    private int maxSize;
+
+    @Value("${event-system.processing.terminal-cache.ttl-seconds}")
+    private long ttlSeconds;
+
+    @Value("${event-system.processing.terminal-cache.bloom-expected-insertions}")
+    private long bloomExpectedInsertions;
+
+    @Value("${event-system.processing.terminal-cache.bloom-false-positive-rate}")
+    private double bloomFalsePositiveRate;
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        cache = new TerminalStatusCache(maxSize, ttlSeconds, bloomExpectedInsertions, bloomFalsePositiveRate);
+    }
+
+    /**
+     * @return SUCCESS if known to be finished, empty if unknown
+     */
+    public Optional<ProcessingStatus> terminalStatus(String eventId, String processorName) {
+        return enabled ? cache.get(eventId, processorName) : Optional.empty();
+    }
+
+    public void recordTerminal(String eventId, String processorName, ProcessingStatus status) {
+        if (enabled) {
+            cache.put(eventId, processorName, status);
+        }
+    }
+}
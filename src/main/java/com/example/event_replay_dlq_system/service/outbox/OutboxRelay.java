@@ -0,0 +1,69 @@
+package com.example.event_replay_dlq_system.service.outbox;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Drains the outbox partitions owned by this node.
+ * Partition p belongs to node p % node-count, so each node polls its own slice;
+ * the row lease of the claim keeps it safe when two nodes are briefly configured with the same index.
+ */
+@Slf4j
+@Component
+public class OutboxRelay {
+
+    private final OutboxService outboxService;
+
+    @Value("${event-system.outbox.relay.batch-size}")
+    private int batchSize;
+
+    @Value("${event-system.outbox.relay.node-index}")
+    private int nodeIndex;
+
+    @Value("${event-system.outbox.relay.node-count}")
+    private int nodeCount;
+
+    private List<Integer> ownedPartitions;
+
+    @Autowired
+    public OutboxRelay(OutboxService outboxService) {
+        this.outboxService = outboxService;
+    }
+
+    @PostConstruct
+    void init() {
+        if (nodeCount < 1 || nodeIndex < 0 || nodeIndex >= nodeCount) {
+            throw new IllegalStateException("Invalid outbox relay node " + nodeIndex + " of " + nodeCount);
+        }
+        ownedPartitions = IntStream.range(0, outboxService.getPartitions())
+                .filter(partition -> partition % nodeCount == nodeIndex)
+                .boxed()
+                .toList();
+        log.info("Outbox relay node {} of {} owns partitions {}", nodeIndex, nodeCount, ownedPartitions);
+    }
+
+    /**
+     * Keeps draining full batches, waits for the next poll once a batch comes back short
+     */
+    @Scheduled(fixedDelayString = "${event-system.outbox.relay.poll-interval-ms}")
+    public void relay() {
+        if (ownedPartitions.isEmpty()) {
+            return;
+        }
+        try {
+            int relayed;
+            do {
+                relayed = outboxService.relayBatch(ownedPartitions, batchSize);
+            } while (relayed == batchSize);
+        } catch (Exception e) {
+            log.error("Outbox relay failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.event_replay_dlq_system.service.outbox;
+
+import com.example.event_replay_dlq_system.entity.Event;
+import com.example.event_replay_dlq_system.entity.OutboxEvent;
+import com.example.event_replay_dlq_system.enums.OutboxStatus;
+import com.example.event_replay_dlq_system.repository.EventRepository;
+import com.example.event_replay_dlq_system.repository.OutboxEventRepository;
+import com.example.event_replay_dlq_system.service.KafkaProducerService;
+import jakarta.transaction.Transactional;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Transactional outbox for the events topic.
+ * Ingest writes an outbox row next to the event in the same local transaction,
+ * the relay drains the rows to kafka and marks them sent once the broker acked.
+ * When ingest awaits the ack itself, the event is sent right after commit and the relay
+ * only takes over rows that are still pending after the grace period.
+ */
+@Slf4j
+@Service
+public class OutboxService {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final EventRepository eventRepository;
+    private final KafkaProducerService kafkaProducerService;
+
+    @Value("${event-system.outbox.partitions}")
+    private int partitions;
+
+    @Value("${event-system.outbox.relay.ack-timeout-ms}")
+    private long ackTimeoutMs;
+
+    @Value("${event-system.outbox.retention-hours}")
+    private long retentionHours;
+
+    @Value("${event-system.outbox.relay.grace-ms}")
+    private long graceMs;
+
+    @Value("${event-system.outbox.relay.lease-ms}")
+    private long leaseMs;
+
+    private final Queue<Long> ackedIds = new ConcurrentLinkedQueue<>();
+
+    @Autowired
+    public OutboxService(OutboxEventRepository outboxEventRepository, EventRepository eventRepository, KafkaProducerService kafkaProducerService) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.eventRepository = eventRepository;
+        this.kafkaProducerService = kafkaProducerService;
+    }
+
+    /**
+     * Adds the events to the outbox, must run inside the transaction that saves them
+     *
+     * @param events saved events
+     */
+    public List<OutboxEvent> enqueue(List<Event> events) {
+        return outboxEventRepository.saveAll(events.stream().map(this::toOutboxEvent).toList());
+    }
+
+    /**
+     * Sends an already committed outbox row without waiting for the relay
+     * The row is marked sent by the next ack flush, if the send fails it stays pending for the relay
+     *
+     * @param outboxEvent committed outbox row
+     * @param event       its event
+     * @return completes on broker ack, fails on send error or ack timeout
+     */
+    public CompletableFuture<SendResult<String, Object>> publishNow(OutboxEvent outboxEvent, Event event) {
+        return kafkaProducerService.sendEventWithAck(event)
+                .orTimeout(ackTimeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((result, ex) -> {
+                    if (ex == null) {
+                        ackedIds.add(outboxEvent.getId());
+                    }
+                });
+    }
+
+    /**
+     * Marks the rows acked by publishNow as sent in one update
+     * Runs off the producer thread so acks never wait on the database
+     */
+    @Scheduled(fixedDelayString = "${event-system.outbox.ack-flush-interval-ms}")
+    @Transactional
+    public void flushAcked() {
+        List<Long> ids = new ArrayList<>();
+        Long id;
+        while ((id = ackedIds.poll()) != null) {
+            ids.add(id);
+        }
+        if (!ids.isEmpty()) {
+            outboxEventRepository.markSent(ids, OutboxStatus.SENT, LocalDateTime.now());
+        }
+    }
+
+    public int partitionOf(String eventId) {
+        return Math.floorMod(eventId.hashCode(), partitions);
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Claims a batch of pending rows of the given partitions, sends their events and waits for the acks
+     * Acked rows are marked SENT, the others stay PENDING and are picked up again by the next run
+     * No transaction is open while the acks are awaited: the claim is a lease on the rows written in its own
+     * short transaction, concurrent relays skip leased rows, and rows of a relay that died are claimed again
+     * once the lease ran out
+     *
+     * @param ownedPartitions outbox partitions of this node
+     * @param batchSize       max rows to relay
+     * @return number of rows claimed
+     */
+    public int relayBatch(Collection<Integer> ownedPartitions, int batchSize) {
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxEvent> rows = outboxEventRepository.claimPendingBatch(ownedPartitions,
+                now.minus(graceMs, ChronoUnit.MILLIS), now, now.plus(leaseMs, ChronoUnit.MILLIS), batchSize);
+        if (rows.isEmpty()) {
+            return 0;
+        }
+
+        Map<String, Event> events = eventRepository.findAllByEventIdIn(rows.stream().map(OutboxEvent::getEventId).toList())
+                .stream()
+                .collect(Collectors.toMap(Event::getEventId, Function.identity()));
+
+        Map<Long, CompletableFuture<SendResult<String, Object>>> sends = new LinkedHashMap<>();
+        List<Long> orphans = new ArrayList<>();
+        for (OutboxEvent row : rows) {
+            Event event = events.get(row.getEventId());
+            if (event == null) {
+                orphans.add(row.getId());
+                continue;
+            }
+            sends.put(row.getId(), kafkaProducerService.sendEventWithAck(event));
+        }
+
+        List<Long> sent = new ArrayList<>();
+        List<Long> failed = new ArrayList<>();
+        String lastError = null;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ackTimeoutMs);
+
+        for (Map.Entry<Long, CompletableFuture<SendResult<String, Object>>> send : sends.entrySet()) {
+            try {
+                send.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                sent.add(send.getKey());
+            } catch (ExecutionException | TimeoutException e) {
+                failed.add(send.getKey());
+                lastError = e.getCause() != null ? e.getCause().getMessage() : e.toString();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failed.add(send.getKey());
+                lastError = "Relay interrupted";
+            }
+        }
+
+        if (!sent.isEmpty()) {
+            outboxEventRepository.markSent(sent, OutboxStatus.SENT, LocalDateTime.now());
+        }
+        if (!failed.isEmpty()) {
+            outboxEventRepository.markFailed(failed, lastError);
+            log.warn("{} outbox events were not acked, will retry: {}", failed.size(), lastError);
+        }
+        if (!orphans.isEmpty()) {
+            outboxEventRepository.deleteAllByIdInBatch(orphans);
+            log.warn("Dropped {} outbox rows without an event", orphans.size());
+        }
+
+        log.debug("Relayed {} outbox events", sent.size());
+        return rows.size();
+    }
+
+    @Scheduled(cron = "0 30 * * * ?")
+    @Transactional
+    public void cleanUpSentOutboxEvents() {
+        int deleted = outboxEventRepository.deleteSentBefore(OutboxStatus.SENT, LocalDateTime.now().minusHours(retentionHours));
+        log.info("Cleaned up {} sent outbox events", deleted);
+    }
+
+    private OutboxEvent toOutboxEvent(Event event) {
+        return OutboxEvent.builder()
+                .eventId(event.getEventId())
+                .partitionNo(partitionOf(event.getEventId()))
+                .status(OutboxStatus.PENDING)
+                .attemptCount(0)
+                .build();
+    }
+}
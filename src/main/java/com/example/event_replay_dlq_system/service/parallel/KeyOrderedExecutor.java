@@ -0,0 +1,60 @@
+package com.example.event_replay_dlq_system.service.parallel;
+
+import java.util.concurrent.*;
+
+/**
+ * Runs tasks on virtual threads, concurrently across keys but strictly one after another per key.
+ * Each key keeps the future of its last task as a tail, a new task is chained behind it
+ * whatever its outcome was. Submissions block once maxInFlight tasks are queued or running.
+ */
+public class KeyOrderedExecutor implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final ConcurrentMap<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public KeyOrderedExecutor(int maxInFlight) {
+        this(maxInFlight, Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    KeyOrderedExecutor(int maxInFlight, ExecutorService executor) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.permits = new Semaphore(maxInFlight);
+        this.executor = executor;
+    }
+
+    /**
+     * Queue the task behind the earlier tasks of the same key
+     *
+     * @param key  ordering key
+     * @param task task
+     * @return completes when the task finished
+     * @throws InterruptedException if interrupted while waiting for an in-flight slot
+     */
+    public CompletableFuture<Void> submit(String key, Runnable task) throws InterruptedException {
+        permits.acquire();
+
+        CompletableFuture<Void> next;
+        try {
+            next = tails.compute(key, (k, tail) -> tail == null
+                    ? CompletableFuture.runAsync(task, executor)
+                    : tail.handle((result, ex) -> null).thenRunAsync(task, executor));
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+
+        next.whenComplete((result, ex) -> {
+            tails.remove(key, next);
+            permits.release();
+        });
+        return next;
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
@@ -0,0 +1,405 @@
+package com.example.event_replay_dlq_system.service.replay;
+
+import com.example.event_replay_dlq_system.entity.Event;
+import com.example.event_replay_dlq_system.entity.ReplayEvent;
+import com.example.event_replay_dlq_system.entity.ReplaySession;
+import com.example.event_replay_dlq_system.enums.ReplaySessionStatus;
+import com.example.event_replay_dlq_system.repository.EventRepository;
+import com.example.event_replay_dlq_system.repository.ReplayEventRepository;
+import com.example.event_replay_dlq_system.repository.ReplaySessionRepository;
+import com.example.event_replay_dlq_system.service.KafkaProducerService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Runs replay sessions on its own bounded executor, one job per session.
+ * The publishing loop walks the replay events of the session from the durable checkpoint,
+ * stops on in-memory pause/cancel signals and records the last published event id after every chunk.
+ * Each event waits for a token of the session's rate limiter, scaled by the throughput governor.
+ * Signals are mirrored through redis pub/sub so the node running the job receives them too.
+ * A job holds the lease replay:session-lease:{sessionId} while it runs, so only one node publishes a session.
+ * The lease is renewed from the moment it is taken, a session being prepared for its job keeps it as well.
+ * On shutdown running sessions are marked PAUSED, sessions left RUNNING by a node that died
+ * are found by their missing lease and paused as well, both can be resumed from their checkpoint.
+ */
+@Slf4j
+@Service
+public class ReplayEngine implements MessageListener {
+
+    private static final String LEASE_KEY_PREFIX = "replay:session-lease:";
+
+    /**
+     * ARGV: node id, lease ms
+     */
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            end
+            return 0
+            """, Long.class);
+
+    /**
+     * ARGV: node id
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final EventRepository eventRepository;
+    private final ReplayEventRepository replayEventRepository;
+    private final ReplaySessionRepository replaySessionRepository;
+    private final KafkaProducerService kafkaProducerService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final Map<String, ReplayJob> jobs = new ConcurrentHashMap<>();
+    private final Set<String> leases = ConcurrentHashMap.newKeySet();
+    private final ThreadPoolTaskExecutor replayExecutor = new ThreadPoolTaskExecutor();
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private volatile double throughputScale = 1.0;
+
+    @Value("${event-system.replay.chunk-size}")
+    private int chunkSize;
+
+    @Value("${event-system.replay.throughput.default-events-per-second}")
+    private double defaultEventsPerSecond;
+
+    @Value("${event-system.replay.throughput.min-events-per-second}")
+    private double minEventsPerSecond;
+
+    @Value("${event-system.replay.throughput.burst-seconds}")
+    private double burstSeconds;
+
+    @Value("${event-system.replay.executor.pool-size}")
+    private int poolSize;
+
+    @Value("${event-system.replay.executor.queue-capacity}")
+    private int queueCapacity;
+
+    @Value("${event-system.replay.executor.await-termination-seconds}")
+    private int awaitTerminationSeconds;
+
+    @Value("${event-system.replay.control-channel}")
+    private String controlChannel;
+
+    @Value("${event-system.replay.lease-ms}")
+    private long leaseMs;
+
+    @Autowired
+    public ReplayEngine(EventRepository eventRepository, ReplayEventRepository replayEventRepository, ReplaySessionRepository replaySessionRepository, KafkaProducerService kafkaProducerService, StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer) {
+        this.eventRepository = eventRepository;
+        this.replayEventRepository = replayEventRepository;
+        this.replaySessionRepository = replaySessionRepository;
+        this.kafkaProducerService = kafkaProducerService;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    void init() {
+        replayExecutor.setCorePoolSize(poolSize);
+        replayExecutor.setMaxPoolSize(poolSize);
+        replayExecutor.setQueueCapacity(queueCapacity);
+        replayExecutor.setThreadNamePrefix("replay-");
+        // jobs get the time to stop at their next event and write the checkpoint
+        replayExecutor.setWaitForTasksToCompleteOnShutdown(true);
+        replayExecutor.setAwaitTerminationSeconds(awaitTerminationSeconds);
+        replayExecutor.initialize();
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(controlChannel));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        for (ReplayJob job : jobs.values()) {
+            // stored before the job stops, after a restart the session can be resumed
+            replaySessionRepository.updateStatusIfIn(job.getSessionId(), List.of(ReplaySessionStatus.RUNNING), ReplaySessionStatus.PAUSED);
+            job.signal(ReplaySessionStatus.PAUSED);
+        }
+        replayExecutor.shutdown();
+    }
+
+    /**
+     * @return true if this node now owns the session and may submit it
+     */
+    public boolean tryAcquireLease(String sessionId) {
+        boolean acquired = Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                .setIfAbsent(leaseKey(sessionId), nodeId, Duration.ofMillis(leaseMs)));
+        if (acquired) {
+            leases.add(sessionId);
+        }
+        return acquired;
+    }
+
+    public void releaseLease(String sessionId) {
+        leases.remove(sessionId);
+        stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(leaseKey(sessionId)), nodeId);
+    }
+
+    /**
+     * Keep the leases taken on this node, whether their job runs already or not, a job whose lease was lost stops
+     */
+    @Scheduled(fixedDelayString = "${event-system.replay.lease-renew-ms}")
+    public void renewLeases() {
+        for (String sessionId : leases) {
+            try {
+                Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, List.of(leaseKey(sessionId)), nodeId, String.valueOf(leaseMs));
+                if (renewed == null || renewed == 0) {
+                    log.warn("Lost the lease of replay session {}, stopping its job", sessionId);
+                    leases.remove(sessionId);
+                    applySignal(sessionId, ReplaySessionStatus.PAUSED);
+                }
+            } catch (Exception e) {
+                log.error("Failed to renew the lease of replay session {}", sessionId, e);
+            }
+        }
+    }
+
+    /**
+     * A RUNNING session with no lease and replay events left after its checkpoint lost its job
+     * (the node died), it is paused so it can be resumed. Sessions that published everything stay RUNNING
+     * until the consumers complete them.
+     */
+    @Scheduled(fixedDelayString = "${event-system.replay.lease-ms}")
+    public void recoverOrphanedSessions() {
+        try {
+            for (ReplaySession session : replaySessionRepository.findByStatus(ReplaySessionStatus.RUNNING)) {
+                String sessionId = session.getSessionId();
+                Long checkpoint = session.getLastPublishedReplayEventId() != null ? session.getLastPublishedReplayEventId() : 0L;
+                if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(leaseKey(sessionId)))
+                        || !replayEventRepository.existsBySessionIdAndIdGreaterThan(sessionId, checkpoint)) {
+                    continue;
+                }
+                if (replaySessionRepository.updateStatusIfIn(sessionId, List.of(ReplaySessionStatus.RUNNING), ReplaySessionStatus.PAUSED) == 1) {
+                    log.warn("Replay session {} was left RUNNING without a job, paused at checkpoint {}", sessionId, checkpoint);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Failed to recover orphaned replay sessions", e);
+        }
+    }
+
+    /**
+     * Start publishing a session in the background, continuing after its checkpoint
+     * The caller holds the session lease, the job gives it up when it ends
+     *
+     * @param session RUNNING session
+     * @return job handle
+     */
+    public ReplayJob submit(ReplaySession session) {
+        String sessionId = session.getSessionId();
+        double target = session.getTargetEventsPerSecond() != null
+                ? session.getTargetEventsPerSecond()
+                : defaultEventsPerSecond;
+        ReplayJob job = new ReplayJob(sessionId, target, new TokenBucketRateLimiter(effectiveRate(target), burstSeconds));
+
+        if (!leases.contains(sessionId)) {
+            // lost while the session was prepared, another node may own it by now
+            replaySessionRepository.updateStatusIfIn(sessionId, List.of(ReplaySessionStatus.RUNNING), ReplaySessionStatus.PAUSED);
+            throw new IllegalStateException("Lost the lease of replay session, resume it: " + sessionId);
+        }
+        if (jobs.putIfAbsent(sessionId, job) != null) {
+            throw new IllegalStateException("Replay job is still running for session: " + sessionId);
+        }
+
+        try {
+            job.setFuture(replayExecutor.submit(() -> run(job, session.getLastPublishedReplayEventId())));
+        } catch (TaskRejectedException e) {
+            jobs.remove(sessionId, job);
+            replaySessionRepository.updateStatusIfIn(sessionId, List.of(ReplaySessionStatus.RUNNING), ReplaySessionStatus.PAUSED);
+            releaseLease(sessionId);
+            throw new IllegalStateException("Replay executor is full, try again later: " + sessionId, e);
+        }
+
+        log.info("Replay job submitted for session: {} (checkpoint: {}, target: {} events/s)", sessionId, session.getLastPublishedReplayEventId(), target);
+        return job;
+    }
+
+    /**
+     * Deliver pause/cancel to the job of the session, on this node and through redis on the others
+     *
+     * @param sessionId session id
+     * @param status    PAUSED or CANCELLED
+     */
+    public void signal(String sessionId, ReplaySessionStatus status) {
+        applySignal(sessionId, status);
+        stringRedisTemplate.convertAndSend(controlChannel, sessionId + ":" + status.name());
+    }
+
+    public boolean isRunning(String sessionId) {
+        return jobs.containsKey(sessionId);
+    }
+
+    public boolean hasRunningJobs() {
+        return !jobs.isEmpty();
+    }
+
+    public double getThroughputScale() {
+        return throughputScale;
+    }
+
+    /**
+     * Retune every running job to scale * its target rate, never below the configured minimum
+     *
+     * @param scale fraction of the target rate, between 0 and 1
+     */
+    public void applyThroughputScale(double scale) {
+        this.throughputScale = scale;
+        for (ReplayJob job : jobs.values()) {
+            job.getRateLimiter().setRate(effectiveRate(job.getTargetEventsPerSecond()));
+        }
+    }
+
+    private double effectiveRate(double target) {
+        return Math.max(Math.min(minEventsPerSecond, target), target * throughputScale);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.lastIndexOf(':');
+        if (separator < 0) {
+            log.warn("Ignoring malformed replay control message: {}", body);
+            return;
+        }
+        ReplaySessionStatus status;
+        try {
+            status = ReplaySessionStatus.valueOf(body.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring replay control message with unknown status: {}", body);
+            return;
+        }
+        applySignal(body.substring(0, separator), status);
+    }
+
+    private void applySignal(String sessionId, ReplaySessionStatus status) {
+        ReplayJob job = jobs.get(sessionId);
+        if (job != null) {
+            job.signal(status);
+            log.info("Replay job signalled {}: {}", status, sessionId);
+        }
+    }
+
+    private void run(ReplayJob job, Long checkpoint) {
+        try {
+            streamEventsInChunks(job, checkpoint);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("⚠️ Publishing interrupted for session: {}", job.getSessionId());
+        } catch (Exception e) {
+            log.error("❌ Replay job failed for session: {}", job.getSessionId(), e);
+            replaySessionRepository.updateStatus(job.getSessionId(), ReplaySessionStatus.FAILED);
+        } finally {
+            jobs.remove(job.getSessionId(), job);
+            try {
+                releaseLease(job.getSessionId());
+            } catch (Exception e) {
+                // the lease runs out on its own
+                log.error("Failed to release the lease of replay session {}", job.getSessionId(), e);
+            }
+        }
+    }
+
+    private void stopped(ReplayJob job, Long lastId, Long storedCheckpoint) {
+        if (!lastId.equals(storedCheckpoint)) {
+            replaySessionRepository.updateCheckpoint(job.getSessionId(), lastId);
+        }
+        log.info("⏸️ Replay session {}: {} (checkpoint: {})", job.getStopSignal(), job.getSessionId(), lastId);
+    }
+
+    private static String leaseKey(String sessionId) {
+        return LEASE_KEY_PREFIX + sessionId;
+    }
+
+    /**
+     * Walk the replay events of the session in id order, one chunk at a time.
+     * The events of each chunk are loaded by event id and published to kafka before the next chunk is read,
+     * then the checkpoint moves to the last replay event id of the chunk.
+     * A stop signal is honoured before the next event, the checkpoint then moves to the last published one.
+     *
+     * @param job        job handle
+     * @param checkpoint last published replay event id, null for a fresh session
+     */
+    private void streamEventsInChunks(ReplayJob job, Long checkpoint) throws InterruptedException {
+        String sessionId = job.getSessionId();
+        Long lastId = checkpoint != null ? checkpoint : 0L;
+        Long storedCheckpoint = lastId;
+        int publishedCount = 0;
+        int chunkCount = 0;
+        log.info("Streaming events in chunks of {} for replay session: {}", chunkSize, sessionId);
+
+        while (true) {
+            if (job.isStopRequested()) {
+                stopped(job, lastId, storedCheckpoint);
+                return;
+            }
+
+            List<ReplayEvent> chunk = replayEventRepository.findBySessionIdAndIdGreaterThanOrderByIdAsc(sessionId, lastId, Limit.of(chunkSize));
+            if (chunk.isEmpty()) {
+                break;
+            }
+
+            Map<String, Event> eventsById = eventRepository.findAllByEventIdIn(chunk.stream().map(ReplayEvent::getEventId).toList())
+                    .stream()
+                    .collect(Collectors.toMap(Event::getEventId, Function.identity()));
+
+            for (ReplayEvent replayEvent : chunk) {
+                Event event = eventsById.get(replayEvent.getEventId());
+                if (event == null) {
+                    log.warn("⚠️ Event {} of replay session {} no longer exists", replayEvent.getEventId(), sessionId);
+                    lastId = replayEvent.getId();
+                    continue;
+                }
+                // returns early on pause/cancel, a low rate must not hold the signal back
+                if (!job.getRateLimiter().acquire(job::isStopRequested)) {
+                    stopped(job, lastId, storedCheckpoint);
+                    return;
+                }
+                kafkaProducerService.sendReplayEvent(event);
+                publishedCount++;
+                lastId = replayEvent.getId();
+            }
+            chunkCount++;
+            replaySessionRepository.updateCheckpoint(sessionId, lastId);
+            storedCheckpoint = lastId;
+
+            log.info("📤 Published chunk {} ({} events, total: {}, rate: {} events/s) for replay session: {}",
+                    chunkCount, chunk.size(), publishedCount, (int) job.getRateLimiter().getRate(), sessionId);
+        }
+
+        log.info("All events published for replay session: {}", sessionId);
+
+        // consumers may have drained everything while the session was paused
+        replaySessionRepository.completeIfFinished(sessionId, ReplaySessionStatus.RUNNING, ReplaySessionStatus.COMPLETED, LocalDateTime.now());
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.event_replay_dlq_system.service.replay;
+
+import com.example.event_replay_dlq_system.enums.ReplaySessionStatus;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.concurrent.Future;
+
+/**
+ * Handle of a replay session running on this node.
+ * Pause and cancel are delivered as an in-memory stop signal,
+ * the publishing loop checks it before every event and a wait for a rate limiter token ends on it.
+ * Publishing is paced by the session's rate limiter, which the throughput governor retunes.
+ */
+@Getter
+public class ReplayJob {
+
+    private final String sessionId;
+
+    private final double targetEventsPerSecond;
+
+    private final TokenBucketRateLimiter rateLimiter;
+
+    private volatile ReplaySessionStatus stopSignal;
+
+    @Setter
+    private volatile Future<?> future;
+
+    public ReplayJob(String sessionId, double targetEventsPerSecond, TokenBucketRateLimiter rateLimiter) {
+        this.sessionId = sessionId;
+        this.targetEventsPerSecond = targetEventsPerSecond;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Ask the job to stop before its next event
+     *
+     * @param status PAUSED or CANCELLED
+     */
+    public void signal(ReplaySessionStatus status) {
+        this.stopSignal = status;
+        rateLimiter.wakeUp();
+    }
+
+    public boolean isStopRequested() {
+        return stopSignal != null;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.event_replay_dlq_system.service.replay;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClient;
+import org.apache.kafka.clients.admin.ListOffsetsResult;
+import org.apache.kafka.clients.admin.OffsetSpec;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Adapts replay throughput to the lag of the consumer group reading the replay topic.
+ * While the lag is above the high watermark and still growing, the scale is cut multiplicatively.
+ * Once it drains below the low watermark, the scale ramps back up step by step to the session targets.
+ */
+@Slf4j
+@Service
+public class ReplayThroughputGovernor {
+
+    private final ReplayEngine replayEngine;
+    private final KafkaAdmin kafkaAdmin;
+
+    private AdminClient adminClient;
+    private long previousLag = -1;
+
+    @Value("${event-system.kafka.topics.replay}")
+    private String replayTopic;
+
+    @Value("${event-system.replay.governor.consumer-group}")
+    private String consumerGroup;
+
+    @Value("${event-system.replay.governor.lag-high-watermark}")
+    private long lagHighWatermark;
+
+    @Value("${event-system.replay.governor.lag-low-watermark}")
+    private long lagLowWatermark;
+
+    @Value("${event-system.replay.governor.decrease-factor}")
+    private double decreaseFactor;
+
+    @Value("${event-system.replay.governor.increase-step}")
+    private double increaseStep;
+
+    @Value("${event-system.replay.governor.min-scale}")
+    private double minScale;
+
+    @Autowired
+    public ReplayThroughputGovernor(ReplayEngine replayEngine, KafkaAdmin kafkaAdmin) {
+        this.replayEngine = replayEngine;
+        this.kafkaAdmin = kafkaAdmin;
+    }
+
+    @PostConstruct
+    void init() {
+        adminClient = AdminClient.create(kafkaAdmin.getConfigurationProperties());
+    }
+
+    @PreDestroy
+    void close() {
+        adminClient.close();
+    }
+
+    @Scheduled(fixedDelayString = "${event-system.replay.governor.sample-interval-ms}")
+    public void adjustThroughput() {
+        if (!replayEngine.hasRunningJobs()) {
+            previousLag = -1;
+            return;
+        }
+
+        try {
+            long lag = replayConsumerLag();
+            double scale = nextScale(replayEngine.getThroughputScale(), lag, previousLag);
+            previousLag = lag;
+
+            if (scale != replayEngine.getThroughputScale()) {
+                log.info("Replay consumer lag {} -> throughput scale {}", lag, String.format("%.2f", scale));
+                replayEngine.applyThroughputScale(scale);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to sample replay consumer lag: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Multiplicative decrease while lag is high and growing, additive increase once it has drained
+     *
+     * @param currentScale current fraction of the target rate
+     * @param lag          latest lag sample
+     * @param previousLag  previous lag sample, -1 if none
+     * @return new scale between minScale and 1
+     */
+    double nextScale(double currentScale, long lag, long previousLag) {
+        if (lag > lagHighWatermark && (previousLag < 0 || lag >= previousLag)) {
+            return Math.max(minScale, currentScale * decreaseFactor);
+        }
+        if (lag < lagLowWatermark) {
+            return Math.min(1.0, currentScale + increaseStep);
+        }
+        return currentScale;
+    }
+
+    private long replayConsumerLag() throws Exception {
+        Map<TopicPartition, OffsetAndMetadata> committed = adminClient.listConsumerGroupOffsets(consumerGroup)
+                .partitionsToOffsetAndMetadata()
+                .get(5, TimeUnit.SECONDS)
+                .entrySet().stream()
+                .filter(entry -> entry.getKey().topic().equals(replayTopic) && entry.getValue() != null)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+        if (committed.isEmpty()) {
+            return 0;
+        }
+
+        Map<TopicPartition, ListOffsetsResult.ListOffsetsResultInfo> endOffsets = adminClient.listOffsets(
+                        committed.keySet().stream().collect(Collectors.toMap(tp -> tp, tp -> OffsetSpec.latest())))
+                .all()
+                .get(5, TimeUnit.SECONDS);
+
+        return committed.entrySet().stream()
+                .mapToLong(entry -> Math.max(0, endOffsets.get(entry.getKey()).offset() - entry.getValue().offset()))
+                .sum();
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.event_replay_dlq_system.service.replay;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket limiting the publish rate of a replay session.
+ * Tokens refill continuously at the current rate, the bucket holds at most burstSeconds worth of tokens.
+ * The rate can be changed while publishers are waiting on it.
+ * A waiting publisher can be woken up to check its stop condition without waiting for the token.
+ */
+public class TokenBucketRateLimiter {
+
+    private final LongSupplier nanoClock;
+    private final double burstSeconds;
+
+    private double ratePerSecond;
+    private double capacity;
+    private double tokens;
+    private long lastRefillNanos;
+
+    public TokenBucketRateLimiter(double ratePerSecond, double burstSeconds) {
+        this(ratePerSecond, burstSeconds, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(double ratePerSecond, double burstSeconds, LongSupplier nanoClock) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + ratePerSecond);
+        }
+        this.nanoClock = nanoClock;
+        this.burstSeconds = burstSeconds;
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = Math.max(1, ratePerSecond * burstSeconds);
+        this.tokens = capacity;
+        this.lastRefillNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Block until one token is available and take it
+     *
+     * @throws InterruptedException if the publishing thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        acquire(() -> false);
+    }
+
+    /**
+     * Block until one token is available and take it, or until stop is true
+     * stop is checked before every wait and whenever wakeUp is called
+     *
+     * @return true if a token was taken, false if stopped
+     * @throws InterruptedException if the publishing thread is interrupted while waiting
+     */
+    public synchronized boolean acquire(BooleanSupplier stop) throws InterruptedException {
+        while (!stop.getAsBoolean()) {
+            long waitNanos = reserve();
+            if (waitNanos == 0) {
+                return true;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+        }
+        return false;
+    }
+
+    /**
+     * Wake up waiting publishers, they check their stop condition and the current rate again
+     */
+    public synchronized void wakeUp() {
+        notifyAll();
+    }
+
+    /**
+     * @return true if a token was taken without waiting
+     */
+    public synchronized boolean tryAcquire() {
+        return reserve() == 0;
+    }
+
+    public synchronized void setRate(double ratePerSecond) {
+        if (ratePerSecond <= 0) {
+            throw new IllegalArgumentException("Rate must be positive: " + ratePerSecond);
+        }
+        refill();
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = Math.max(1, ratePerSecond * burstSeconds);
+        this.tokens = Math.min(tokens, capacity);
+        notifyAll();
+    }
+
+    public synchronized double getRate() {
+        return ratePerSecond;
+    }
+
+    /**
+     * Take a token if one is available
+     *
+     * @return 0 if a token was taken, otherwise nanos until the next token is available
+     */
+    synchronized long reserve() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / ratePerSecond * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    private void refill() {
+        long now = nanoClock.getAsLong();
+        double elapsedSeconds = (now - lastRefillNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        tokens = Math.min(capacity, tokens + elapsedSeconds * ratePerSecond);
+        lastRefillNanos = now;
+    }
+}
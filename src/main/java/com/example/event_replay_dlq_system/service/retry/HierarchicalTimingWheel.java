@@ -0,0 +1,135 @@
+package com.example.event_replay_dlq_system.service.retry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel, not thread safe
+ * A level has wheelSize buckets of tickMs each, entries beyond its span go to an overflow level
+ * whose tick is the span of the level below. Insert and expiry are O(1) per entry and level;
+ * an entry drained from an overflow bucket is re-inserted into a finer level until it is due.
+ * An entry is returned by the first advance(now) with now >= dueAt.
+ *
+ * @param <T> item type
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final long interval;
+    private final List<Entry<T>>[] buckets;
+    private final long[] bucketExpiration;
+    private long currentTime;
+    private HierarchicalTimingWheel<T> overflow;
+    private int size;
+
+    private record Entry<T>(T item, long dueAt) {
+    }
+
+    /**
+     * @param tickMs    bucket width of the finest level
+     * @param wheelSize buckets per level
+     * @param startMs   current time
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public HierarchicalTimingWheel(long tickMs, int wheelSize, long startMs) {
+        if (tickMs < 1 || wheelSize < 2) {
+            throw new IllegalArgumentException("tickMs must be positive and wheelSize at least 2");
+        }
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.interval = tickMs * wheelSize;
+        this.buckets = new List[wheelSize];
+        this.bucketExpiration = new long[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayList<>();
+            bucketExpiration[i] = -1;
+        }
+        this.currentTime = startMs - startMs % tickMs;
+    }
+
+    /**
+     * @param item  item
+     * @param dueAt due time in epoch millis
+     * @param now   current time
+     * @return false if the item is already due, it is not added then
+     */
+    public boolean add(T item, long dueAt, long now) {
+        if (dueAt <= now) {
+            return false;
+        }
+        place(new Entry<>(item, dueAt));
+        size++;
+        return true;
+    }
+
+    /**
+     * Move the clock to now
+     *
+     * @return items that became due, in no particular order
+     */
+    public List<T> advance(long now) {
+        List<Entry<T>> drained = new ArrayList<>();
+        drain(now, drained);
+
+        List<T> due = new ArrayList<>();
+        for (Entry<T> entry : drained) {
+            if (entry.dueAt() <= now) {
+                due.add(entry.item());
+                size--;
+            } else {
+                place(entry);
+            }
+        }
+        return due;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void place(Entry<T> entry) {
+        long expiration = entry.dueAt() - entry.dueAt() % tickMs;
+        if (expiration < currentTime + interval) {
+            int index = (int) ((expiration / tickMs) % wheelSize);
+            buckets[index].add(entry);
+            bucketExpiration[index] = expiration;
+            return;
+        }
+        if (overflow == null) {
+            overflow = new HierarchicalTimingWheel<>(interval, wheelSize, currentTime);
+        }
+        overflow.place(entry);
+    }
+
+    /**
+     * Empties every bucket of this level and the levels above that expired by now
+     */
+    private void drain(long now, List<Entry<T>> drained) {
+        long target = now - now % tickMs;
+        if (target >= currentTime) {
+            if ((target - currentTime) / tickMs >= wheelSize) {
+                for (int i = 0; i < wheelSize; i++) {
+                    drainBucket(i, now, drained);
+                }
+            } else {
+                // the current bucket is included, it holds entries due later within the current tick
+                for (long t = currentTime; t <= target; t += tickMs) {
+                    drainBucket((int) ((t / tickMs) % wheelSize), now, drained);
+                }
+            }
+            currentTime = target;
+        }
+        if (overflow != null) {
+            overflow.drain(now, drained);
+        }
+    }
+
+    private void drainBucket(int index, long now, List<Entry<T>> drained) {
+        if (bucketExpiration[index] != -1 && bucketExpiration[index] <= now) {
+            drained.addAll(buckets[index]);
+            buckets[index].clear();
+            bucketExpiration[index] = -1;
+        }
+    }
+}
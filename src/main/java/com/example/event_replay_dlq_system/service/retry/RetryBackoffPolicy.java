@@ -0,0 +1,72 @@
+package com.example.event_replay_dlq_system.service.retry;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Backoff of the retries, exponential delay base * 2^attempt capped at max
+ * none:         the exponential delay itself, every event failing in the same second retries in the same second
+ * full:         random in [0, exponential delay]
+ * decorrelated: random in [base, 3 * previous delay] capped at max, the previous delay is not stored,
+ *               the chain is drawn again up to the attempt, which gives the same spread
+ */
+@Component
+public class RetryBackoffPolicy {
+
+    public enum Jitter {
+        NONE, FULL, DECORRELATED
+    }
+
+    private final Jitter jitter;
+    private final long baseMs;
+    private final long maxMs;
+    private final DoubleSupplier random;
+
+    @Autowired
+    public RetryBackoffPolicy(@Value("${event-system.retry.backoff.jitter}") String jitter,
+                              @Value("${event-system.retry.backoff.base-ms}") long baseMs,
+                              @Value("${event-system.retry.backoff.max-ms}") long maxMs) {
+        this(Jitter.valueOf(jitter.toUpperCase()), baseMs, maxMs, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    RetryBackoffPolicy(Jitter jitter, long baseMs, long maxMs, DoubleSupplier random) {
+        if (baseMs < 1 || maxMs < baseMs) {
+            throw new IllegalArgumentException("base-ms must be positive and max-ms at least base-ms");
+        }
+        this.jitter = jitter;
+        this.baseMs = baseMs;
+        this.maxMs = maxMs;
+        this.random = random;
+    }
+
+    /**
+     * @param attempt attempts made so far, at least 1
+     * @return delay until the next attempt
+     */
+    public Duration delay(int attempt) {
+        long delayMs = switch (jitter) {
+            case NONE -> exponential(attempt);
+            case FULL -> (long) (random.getAsDouble() * exponential(attempt));
+            case DECORRELATED -> decorrelated(attempt);
+        };
+        return Duration.ofMillis(delayMs);
+    }
+
+    private long exponential(int attempt) {
+        // base * 2^attempt overflows once the shift reaches the sign bit, it is capped long before that
+        return attempt >= Long.numberOfLeadingZeros(baseMs) - 1 ? maxMs : Math.min(maxMs, baseMs << Math.max(attempt, 0));
+    }
+
+    private long decorrelated(int attempt) {
+        long delayMs = baseMs;
+        for (int i = 0; i < Math.max(attempt, 1); i++) {
+            delayMs = Math.min(maxMs, baseMs + (long) (random.getAsDouble() * (delayMs * 3 - baseMs)));
+        }
+        return delayMs;
+    }
+}
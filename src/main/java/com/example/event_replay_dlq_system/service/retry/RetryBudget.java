@@ -0,0 +1,140 @@
+package com.example.event_replay_dlq_system.service.retry;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cluster wide retry budget per processor, a token bucket on redis (event:retry:budget:{processor})
+ * Every processor call on any node deposits ratio tokens, a retry takes one, so retries stay
+ * within ratio of the live throughput. The bucket also refills at min-per-second so a processor
+ * with little traffic can still retry, and holds at most capacity tokens.
+ * A retry is never refused: the bucket goes into debt and the retry is pushed back until
+ * the floor refill would have paid for it, deposits from live traffic only make that earlier.
+ * Calls are counted locally and deposited with the next reservation or flush.
+ */
+@Slf4j
+@Component
+public class RetryBudget {
+
+    /**
+     * ARGV: now, refill per ms, capacity, deposit, take, ttl ms
+     * returns millis until the bucket is out of debt
+     */
+    static final RedisScript<Long> BUDGET_SCRIPT = new DefaultRedisScript<>("""
+            local now = tonumber(ARGV[1])
+            local rate = tonumber(ARGV[2])
+            local capacity = tonumber(ARGV[3])
+            local state = redis.call('HMGET', KEYS[1], 'tokens', 'ts')
+            local tokens = tonumber(state[1]) or capacity
+            local ts = tonumber(state[2]) or now
+            tokens = math.min(capacity, tokens + math.max(0, now - ts) * rate + tonumber(ARGV[4])) - tonumber(ARGV[5])
+            redis.call('HSET', KEYS[1], 'tokens', tostring(tokens), 'ts', ARGV[1])
+            redis.call('PEXPIRE', KEYS[1], ARGV[6])
+            if tokens >= 0 then
+                return 0
+            end
+            return math.ceil(-tokens / rate)
+            """, Long.class);
+
+    private static final long TTL_MS = Duration.ofHours(1).toMillis();
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ConcurrentMap<String, LongAdder> calls = new ConcurrentHashMap<>();
+
+    @Value("${event-system.retry.budget.enabled}")
+    private boolean enabled;
+
+    @Value("${event-system.retry.budget.ratio}")
+    private double ratio;
+
+    @Value("${event-system.retry.budget.min-per-second}")
+    private double minPerSecond;
+
+    @Value("${event-system.retry.budget.capacity}")
+    private double capacity;
+
+    @Value("${event-system.retry.budget.max-defer-ms}")
+    private long maxDeferMs;
+
+    @Autowired
+    public RetryBudget(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * Count processor calls towards the budget
+     */
+    public void recordCalls(String processorName, int count) {
+        if (enabled) {
+            calls.computeIfAbsent(processorName, name -> new LongAdder()).add(count);
+        }
+    }
+
+    /**
+     * Take a token for one retry of the processor
+     *
+     * @return extra delay for the retry, zero within the budget
+     */
+    public Duration reserve(String processorName) {
+        if (!enabled) {
+            return Duration.ZERO;
+        }
+        long pending = pendingCalls(processorName);
+        try {
+            long waitMs = execute(processorName, pending, 1);
+            if (waitMs > 0) {
+                log.info("Retry budget of {} exhausted, deferring retry by {}ms", processorName, Math.min(waitMs, maxDeferMs));
+            }
+            return Duration.ofMillis(Math.min(waitMs, maxDeferMs));
+        } catch (Exception e) {
+            // the budget only shapes retries, a redis failure must not lose them
+            recordCalls(processorName, (int) pending);
+            log.error("Failed to reserve retry budget of {}", processorName, e);
+            return Duration.ZERO;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${event-system.retry.budget.flush-interval-ms}")
+    public void flush() {
+        for (String processorName : calls.keySet()) {
+            long pending = pendingCalls(processorName);
+            if (pending == 0) {
+                continue;
+            }
+            try {
+                execute(processorName, pending, 0);
+            } catch (Exception e) {
+                calls.get(processorName).add(pending);
+                log.error("Failed to deposit retry budget of {}", processorName, e);
+            }
+        }
+    }
+
+    private long pendingCalls(String processorName) {
+        LongAdder adder = calls.get(processorName);
+        return adder == null ? 0 : adder.sumThenReset();
+    }
+
+    private long execute(String processorName, long calls, int take) {
+        Long waitMs = stringRedisTemplate.execute(BUDGET_SCRIPT, List.of("event:retry:budget:" + processorName),
+                String.valueOf(System.currentTimeMillis()),
+                String.valueOf(minPerSecond / 1000),
+                String.valueOf(capacity),
+                String.valueOf(calls * ratio),
+                String.valueOf(take),
+                String.valueOf(TTL_MS));
+        return waitMs == null ? 0 : waitMs;
+    }
+}
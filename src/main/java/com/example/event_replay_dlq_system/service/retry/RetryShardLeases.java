@@ -0,0 +1,146 @@
+package com.example.event_replay_dlq_system.service.retry;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ownership of the retry queue shards, held as leases in redis
+ * Every node heartbeats into event:retry:nodes and holds at most its fair share (shards / live nodes)
+ * of the event:retry:shard-lease:{shard} keys. Leases are renewed on every heartbeat, shards beyond the fair share
+ * are given back so joining nodes get theirs, and the shards of a dead node are taken over once its leases expire.
+ */
+@Slf4j
+@Component
+public class RetryShardLeases {
+
+    static final String NODES_KEY = "event:retry:nodes";
+    private static final String LEASE_KEY_PREFIX = "event:retry:shard-lease:";
+
+    /**
+     * ARGV: node id, lease ms
+     */
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('PEXPIRE', KEYS[1], ARGV[2])
+            end
+            return 0
+            """, Long.class);
+
+    /**
+     * ARGV: node id
+     */
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Set<Integer> owned = ConcurrentHashMap.newKeySet();
+
+    @Value("${event-system.retry.shards}")
+    private int shards;
+
+    @Value("${event-system.retry.sharding.lease-ms}")
+    private long leaseMs;
+
+    @Value("${event-system.retry.backend}")
+    private String backend;
+
+    @Autowired
+    public RetryShardLeases(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    /**
+     * @return shards this node may drain, until the next heartbeat
+     */
+    public Set<Integer> ownedShards() {
+        return Set.copyOf(owned);
+    }
+
+    @Scheduled(fixedDelayString = "${event-system.retry.sharding.heartbeat-ms}")
+    public void heartbeat() {
+        if (!"redis".equals(backend)) {
+            return;
+        }
+        try {
+            rebalance();
+        } catch (Exception e) {
+            // without renewals the leases run out and other nodes take the shards over
+            log.error("Retry shard heartbeat failed", e);
+        }
+    }
+
+    private void rebalance() {
+        long now = System.currentTimeMillis();
+        stringRedisTemplate.opsForZSet().add(NODES_KEY, nodeId, now);
+        stringRedisTemplate.opsForZSet().removeRangeByScore(NODES_KEY, 0, now - leaseMs);
+        Long liveNodes = stringRedisTemplate.opsForZSet().zCard(NODES_KEY);
+        int fairShare = (int) Math.ceil((double) shards / Math.max(1, liveNodes == null ? 1 : liveNodes));
+
+        for (Integer shard : owned) {
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, List.of(leaseKey(shard)), nodeId, String.valueOf(leaseMs));
+            if (renewed == null || renewed == 0) {
+                owned.remove(shard);
+                log.warn("Lost lease of retry shard {}", shard);
+            }
+        }
+
+        for (Integer shard : owned) {
+            if (owned.size() <= fairShare) {
+                break;
+            }
+            release(shard);
+        }
+
+        // start at a node specific shard so nodes do not all race for the same free shards
+        int offset = Math.floorMod(nodeId.hashCode(), shards);
+        for (int i = 0; i < shards && owned.size() < fairShare; i++) {
+            int shard = (offset + i) % shards;
+            if (!owned.contains(shard) && Boolean.TRUE.equals(
+                    stringRedisTemplate.opsForValue().setIfAbsent(leaseKey(shard), nodeId, Duration.ofMillis(leaseMs)))) {
+                owned.add(shard);
+                log.info("Took over retry shard {}", shard);
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (!"redis".equals(backend)) {
+            return;
+        }
+        try {
+            owned.forEach(this::release);
+            stringRedisTemplate.opsForZSet().remove(NODES_KEY, nodeId);
+        } catch (Exception e) {
+            log.warn("Could not give back retry shards, they are taken over once the leases expire", e);
+        }
+    }
+
+    private void release(int shard) {
+        owned.remove(shard);
+        stringRedisTemplate.execute(RELEASE_SCRIPT, List.of(leaseKey(shard)), nodeId);
+        log.info("Released retry shard {}", shard);
+    }
+
+    private static String leaseKey(int shard) {
+        return LEASE_KEY_PREFIX + shard;
+    }
+}
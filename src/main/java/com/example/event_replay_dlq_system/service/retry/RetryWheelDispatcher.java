@@ -0,0 +1,216 @@
+package com.example.event_replay_dlq_system.service.retry;
+
+import com.example.event_replay_dlq_system.service.RetrySchedulerService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fires due retries of the shards this node owns from an in-process timing wheel
+ * The wheel holds the due times of the shard queues: loaded from redis when a shard is taken over,
+ * extended by the schedule messages the schedule script publishes. When a due time is reached
+ * the shard is drained right away, so a retry goes out within a tick of its due time
+ * and redis is only touched on schedule and claim.
+ */
+@Slf4j
+@Component
+public class RetryWheelDispatcher implements MessageListener {
+
+    private final RetrySchedulerService retrySchedulerService;
+    private final RetryShardLeases retryShardLeases;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final Object lock = new Object();
+    private final Set<Integer> loadedShards = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> draining = ConcurrentHashMap.newKeySet();
+    // shards whose due time fired while they were being drained
+    private final Set<Integer> refire = ConcurrentHashMap.newKeySet();
+    private final ExecutorService drainExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // guarded by lock
+    private HierarchicalTimingWheel<Integer> wheel;
+    private final Set<Integer> dueNow = new HashSet<>();
+
+    private volatile boolean running;
+    private Thread driver;
+
+    @Value("${event-system.retry.wheel.enabled}")
+    private boolean enabled;
+
+    @Value("${event-system.retry.wheel.tick-ms}")
+    private long tickMs;
+
+    @Value("${event-system.retry.wheel.wheel-size}")
+    private int wheelSize;
+
+    @Value("${event-system.retry.wheel.channel}")
+    private String channel;
+
+    @Value("${event-system.retry.backend}")
+    private String backend;
+
+    @Autowired
+    public RetryWheelDispatcher(RetrySchedulerService retrySchedulerService, RetryShardLeases retryShardLeases, StringRedisTemplate stringRedisTemplate, RedisMessageListenerContainer listenerContainer) {
+        this.retrySchedulerService = retrySchedulerService;
+        this.retryShardLeases = retryShardLeases;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.listenerContainer = listenerContainer;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled || !"redis".equals(backend)) {
+            return;
+        }
+        wheel = new HierarchicalTimingWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+        listenerContainer.addMessageListener(this, new ChannelTopic(channel));
+
+        running = true;
+        driver = Thread.ofPlatform().name("retry-wheel").daemon().start(this::run);
+    }
+
+    @PreDestroy
+    void stop() {
+        running = false;
+        if (driver != null) {
+            driver.interrupt();
+        }
+        drainExecutor.close();
+    }
+
+    /**
+     * Loads the due times of shards this node just took over, forgets the ones it lost
+     */
+    @Scheduled(fixedDelayString = "${event-system.retry.sharding.heartbeat-ms}")
+    public void syncShards() {
+        if (!running) {
+            return;
+        }
+        Set<Integer> owned = retryShardLeases.ownedShards();
+        loadedShards.retainAll(owned);
+
+        for (Integer shard : owned) {
+            if (loadedShards.contains(shard)) {
+                continue;
+            }
+            try {
+                // marked first so schedule messages arriving during the load are kept
+                loadedShards.add(shard);
+                load(shard);
+            } catch (Exception e) {
+                loadedShards.remove(shard);
+                log.error("Failed to load retry shard {} into the timing wheel", shard, e);
+            }
+        }
+    }
+
+    private void load(int shard) {
+        Set<ZSetOperations.TypedTuple<String>> entries = stringRedisTemplate.opsForZSet()
+                .rangeWithScores(RetrySchedulerService.keys(shard).get(0), 0, -1);
+        if (entries == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (lock) {
+            for (ZSetOperations.TypedTuple<String> entry : entries) {
+                if (entry.getScore() != null) {
+                    schedule(shard, entry.getScore().longValue(), now);
+                }
+            }
+        }
+        log.info("Loaded {} retries of shard {} into the timing wheel", entries.size(), shard);
+    }
+
+    /**
+     * Schedule message: shard:dueAt
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int separator = body.indexOf(':');
+        try {
+            int shard = Integer.parseInt(body.substring(0, separator));
+            long dueAt = Long.parseLong(body.substring(separator + 1));
+            if (loadedShards.contains(shard)) {
+                synchronized (lock) {
+                    schedule(shard, dueAt, System.currentTimeMillis());
+                }
+            }
+        } catch (RuntimeException e) {
+            log.warn("Ignoring malformed retry schedule message {}", body);
+        }
+    }
+
+    // guarded by lock
+    private void schedule(int shard, long dueAt, long now) {
+        if (!wheel.add(shard, dueAt, now)) {
+            dueNow.add(shard);
+        }
+    }
+
+    private void run() {
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        while (running) {
+            Set<Integer> due;
+            synchronized (lock) {
+                due = new HashSet<>(wheel.advance(System.currentTimeMillis()));
+                due.addAll(dueNow);
+                dueNow.clear();
+            }
+            due.forEach(this::fire);
+            LockSupport.parkNanos(tickNanos);
+        }
+    }
+
+    /**
+     * Drain the shard off the wheel thread, one drain per shard at a time
+     * A due time reached while its shard is being drained makes that drain run once more
+     */
+    private void fire(int shard) {
+        while (loadedShards.contains(shard)) {
+            if (draining.add(shard)) {
+                drainExecutor.execute(() -> drain(shard));
+                return;
+            }
+            refire.add(shard);
+            // the drain may have ended before it saw the mark, then the mark is taken back and the shard fired here
+            if (draining.contains(shard) || !refire.remove(shard)) {
+                return;
+            }
+        }
+    }
+
+    private void drain(int shard) {
+        try {
+            do {
+                refire.remove(shard);
+                retrySchedulerService.drainShard(shard);
+            } while (refire.contains(shard) && loadedShards.contains(shard));
+        } finally {
+            draining.remove(shard);
+            if (refire.remove(shard)) {
+                fire(shard);
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.event_replay_dlq_system.service.retry;
+
+import com.example.event_replay_dlq_system.entity.Event;
+import com.example.event_replay_dlq_system.service.KafkaProducerService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.AcknowledgingConsumerAwareMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retry backend on delay-tier topics, used with event-system.retry.backend: topics
+ * A retry goes to the smallest tier topic (<retry topic>-<n>s) whose delay covers the requested one.
+ * Records of a tier are due in offset order (record timestamp + tier delay), so each tier consumer
+ * pauses a partition until its head record is due, then forwards it to the retry topic.
+ * Every record carries its due time (retry-due-at header): a delay beyond the largest tier goes round
+ * the tiers again until it is due, so long deferrals such as retry budget ones are kept.
+ * Retry capacity scales with kafka storage instead of redis memory, nothing polls.
+ */
+@Slf4j
+@Component
+public class TieredRetryTopics {
+
+    private final KafkaProducerService kafkaProducerService;
+    private final ConcurrentKafkaListenerContainerFactory<String, Object> containerFactory;
+    private final KafkaAdmin kafkaAdmin;
+    private final boolean enabled;
+    private final List<Tier> tiers;
+    private final int tierPartitions;
+
+    private final List<ConcurrentMessageListenerContainer<String, Object>> containers = new ArrayList<>();
+    private final ScheduledExecutorService resumer = Executors.newSingleThreadScheduledExecutor();
+
+    // partition -> offset of the head record it waits for
+    private final ConcurrentMap<TopicPartition, Long> waitingHeads = new ConcurrentHashMap<>();
+
+    private record Tier(long delayMillis, String topic) {
+    }
+
+    @Autowired
+    public TieredRetryTopics(KafkaProducerService kafkaProducerService,
+                             @Qualifier("retryTierKafkaListenerContainerFactory") ConcurrentKafkaListenerContainerFactory<String, Object> containerFactory,
+                             KafkaAdmin kafkaAdmin,
+                             @Value("${event-system.retry.backend}") String backend,
+                             @Value("${event-system.kafka.topics.retry}") String retryTopic,
+                             @Value("${event-system.retry.tiers.delays-seconds}") String delaysSeconds,
+                             @Value("${event-system.retry.tiers.partitions}") int tierPartitions) {
+        this.kafkaProducerService = kafkaProducerService;
+        this.containerFactory = containerFactory;
+        this.kafkaAdmin = kafkaAdmin;
+        this.enabled = "topics".equals(backend);
+        this.tierPartitions = tierPartitions;
+        this.tiers = Arrays.stream(delaysSeconds.split(","))
+                .map(String::trim)
+                .map(Long::parseLong)
+                .sorted()
+                .map(seconds -> new Tier(TimeUnit.SECONDS.toMillis(seconds), retryTopic + "-" + seconds + "s"))
+                .toList();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+
+        kafkaAdmin.createOrModifyTopics(tiers.stream()
+                .map(tier -> TopicBuilder.name(tier.topic()).partitions(tierPartitions).replicas(1).build())
+                .toArray(NewTopic[]::new));
+
+        for (Tier tier : tiers) {
+            ConcurrentMessageListenerContainer<String, Object> container = containerFactory.createContainer(tier.topic());
+            container.getContainerProperties().setConsumerRebalanceListener(new ConsumerAwareRebalanceListener() {
+                @Override
+                public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                    partitions.forEach(waitingHeads::remove);
+                }
+            });
+            container.setupMessageListener((AcknowledgingConsumerAwareMessageListener<String, Object>) (record, ack, consumer) ->
+                    onRecord(tier, container, record, ack, consumer));
+            container.start();
+            containers.add(container);
+        }
+        log.info("Retry tiers started: {}", tiers.stream().map(Tier::topic).toList());
+    }
+
+    @PreDestroy
+    void stop() {
+        containers.forEach(ConcurrentMessageListenerContainer::stop);
+        resumer.shutdownNow();
+    }
+
+    /**
+     * Publish the event to the tier covering the delay, delays beyond the largest tier use the largest tier
+     * and are passed on to the next tier once it released them
+     * Returns once the tier topic acked the record
+     */
+    public void publish(Event event, Duration delay) {
+        publishDueAt(event, System.currentTimeMillis() + delay.toMillis());
+    }
+
+    private void publishDueAt(Event event, long dueAt) {
+        long delayMillis = dueAt - System.currentTimeMillis();
+        Tier tier = tiers.stream()
+                .filter(t -> t.delayMillis() >= delayMillis)
+                .findFirst()
+                .orElse(tiers.get(tiers.size() - 1));
+
+        kafkaProducerService.sendRetryTierEventWithAck(tier.topic(), event, dueAt).join();
+        log.info("Retry of event {} queued on {}", event.getEventId(), tier.topic());
+    }
+
+    private void onRecord(Tier tier, ConcurrentMessageListenerContainer<String, Object> container,
+                          ConsumerRecord<String, Object> record, Acknowledgment ack, Consumer<?, ?> consumer) {
+        TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+
+        Long head = waitingHeads.get(partition);
+        if (head != null) {
+            if (record.offset() != head) {
+                // rest of the poll behind a head that is not due yet, fetched again after the seek
+                return;
+            }
+            waitingHeads.remove(partition);
+        }
+
+        long waitMillis = record.timestamp() + tier.delayMillis() - System.currentTimeMillis();
+        if (waitMillis > 0) {
+            waitingHeads.put(partition, record.offset());
+            consumer.seek(partition, record.offset());
+            container.pausePartition(partition);
+            resumer.schedule(() -> container.resumePartition(partition), waitMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+
+        Long dueAt = dueAt(record);
+        if (dueAt != null && dueAt > System.currentTimeMillis()) {
+            // longer than the largest tier, another round
+            publishDueAt((Event) record.value(), dueAt);
+        } else {
+            kafkaProducerService.sendRetryEventWithAck((Event) record.value()).join();
+        }
+        ack.acknowledge();
+    }
+
+    /**
+     * @return due time of the record, null for records written without the header
+     */
+    private static Long dueAt(ConsumerRecord<String, Object> record) {
+        Header header = record.headers().lastHeader(KafkaProducerService.RETRY_DUE_AT_HEADER);
+        return header == null ? null : Long.parseLong(new String(header.value(), StandardCharsets.UTF_8));
+    }
+}
@@ -7,6 +7,7 @@ import org.springframework.data.jpa.domain.Specification;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class EventSpecification {
     public static Specification<Event> byFilter(EventFilter filter) {
@@ -44,4 +45,48 @@ public class EventSpecification {
         };
 
     }
+
+    /**
+     * Native SQL form of {@link #byFilter(EventFilter)} over the events table aliased as e,
+     * for set-based statements that cannot go through the criteria API
+     *
+     * @param filter     replay filter
+     * @param parameters receives the named parameters used by the clause
+     * @return WHERE clause with a leading space, or an empty string when the filter matches everything
+     */
+    public static String toSqlWhereClause(EventFilter filter, Map<String, Object> parameters) {
+        List<String> clauses = new ArrayList<>();
+
+        if (filter.getEventIds() != null && !filter.getEventIds().isEmpty()) {
+            clauses.add("e.event_id IN (:eventIds)");
+            parameters.put("eventIds", filter.getEventIds());
+        }
+
+        if (filter.getEventType() != null && !filter.getEventType().isEmpty()) {
+            clauses.add("e.event_type = :eventType");
+            parameters.put("eventType", filter.getEventType());
+        }
+
+        if (filter.getFromDate() != null) {
+            clauses.add("e.created_at >= :fromDate");
+            parameters.put("fromDate", filter.getFromDate());
+        }
+
+        if (filter.getToDate() != null) {
+            clauses.add("e.created_at <= :toDate");
+            parameters.put("toDate", filter.getToDate());
+        }
+
+        if (filter.getSourceSystem() != null && !filter.getSourceSystem().isEmpty()) {
+            clauses.add("e.source_system = :sourceSystem");
+            parameters.put("sourceSystem", filter.getSourceSystem());
+        }
+
+        if (filter.getCorrelationId() != null && !filter.getCorrelationId().isEmpty()) {
+            clauses.add("e.correlation_id = :correlationId");
+            parameters.put("correlationId", filter.getCorrelationId());
+        }
+
+        return clauses.isEmpty() ? "" : " WHERE " + String.join(" AND ", clauses);
+    }
 }
@@ -0,0 +1,72 @@
+package com.example.event_replay_dlq_system.processor;
+
+import com.example.event_replay_dlq_system.entity.Event;
+import com.example.event_replay_dlq_system.exception.ProcessingException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EventProcessorTest {
+
+    private final List<String> processed = new ArrayList<>();
+
+    private final EventProcessor processor = new EventProcessor() {
+        @Override
+        public void process(Event event) throws ProcessingException {
+            if (event.getEventId().startsWith("bad")) {
+                throw new ProcessingException("failed " + event.getEventId());
+            }
+            processed.add(event.getEventId());
+        }
+
+        @Override
+        public String getProcessorName() {
+            return "TestProcessor";
+        }
+
+        @Override
+        public Set<String> supportedEventTypes() {
+            return Set.of("OrderCreated");
+        }
+    };
+
+    @Test
+    void processAsync_Default_RunsProcessInline() {
+        CompletableFuture<Void> result = processor.processAsync(event("evt-1")).toCompletableFuture();
+
+        assertTrue(result.isDone());
+        assertEquals(List.of("evt-1"), processed);
+    }
+
+    @Test
+    void processAsync_Default_FailureCompletesExceptionally() {
+        CompletableFuture<Void> result = processor.processAsync(event("bad-1")).toCompletableFuture();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, result::get);
+        assertInstanceOf(ProcessingException.class, failure.getCause());
+    }
+
+    @Test
+    void processBatch_Default_ReturnsFailuresByEventId() {
+        Map<String, ProcessingException> failures = processor.processBatch(List.of(event("evt-1"), event("bad-1"), event("evt-2")));
+
+        assertEquals(List.of("evt-1", "evt-2"), processed);
+        assertEquals(Set.of("bad-1"), failures.keySet());
+        assertEquals("failed bad-1", failures.get("bad-1").getMessage());
+        assertFalse(processor.supportsBatch());
+    }
+
+    private static Event event(String eventId) {
+        Event event = new Event();
+        event.setEventId(eventId);
+        event.setEventType("OrderCreated");
+        return event;
+    }
+}
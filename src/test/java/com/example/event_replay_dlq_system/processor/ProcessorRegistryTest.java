@@ -0,0 +1,68 @@
+package com.example.event_replay_dlq_system.processor;
+
+import com.example.event_replay_dlq_system.entity.Event;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ProcessorRegistryTest {
+
+    @Test
+    void processorsFor_ReturnsEveryProcessorOfTheType() {
+        EventProcessor orders = processor("OrderEventProcessor", "OrderCreated", "OrderCancelled");
+        EventProcessor audit = processor("AuditProcessor", "OrderCreated");
+
+        ProcessorRegistry registry = new ProcessorRegistry(List.of(orders, audit));
+
+        assertEquals(List.of(orders, audit), registry.processorsFor("OrderCreated"));
+        assertEquals(List.of(orders), registry.processorsFor("OrderCancelled"));
+    }
+
+    @Test
+    void processorsFor_UnknownOrNullType_ReturnsEmpty() {
+        ProcessorRegistry registry = new ProcessorRegistry(List.of(processor("OrderEventProcessor", "OrderCreated")));
+
+        assertTrue(registry.processorsFor("PaymentProcessed").isEmpty());
+        assertTrue(registry.processorsFor(null).isEmpty());
+    }
+
+    @Test
+    void findByName_ReturnsProcessor() {
+        EventProcessor orders = processor("OrderEventProcessor", "OrderCreated");
+
+        ProcessorRegistry registry = new ProcessorRegistry(List.of(orders));
+
+        assertSame(orders, registry.findByName("OrderEventProcessor").orElseThrow());
+        assertTrue(registry.findByName("Missing").isEmpty());
+    }
+
+    @Test
+    void constructor_DuplicateProcessorName_Throws() {
+        List<EventProcessor> processors = List.of(
+                processor("OrderEventProcessor", "OrderCreated"),
+                processor("OrderEventProcessor", "OrderUpdated"));
+
+        assertThrows(IllegalStateException.class, () -> new ProcessorRegistry(processors));
+    }
+
+    private static EventProcessor processor(String name, String... eventTypes) {
+        return new EventProcessor() {
+            @Override
+            public void process(Event event) {
+            }
+
+            @Override
+            public String getProcessorName() {
+                return name;
+            }
+
+            @Override
+            public Set<String> supportedEventTypes() {
+                return Set.of(eventTypes);
+            }
+        };
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.event_replay_dlq_system.service;
+
+import com.example.event_replay_dlq_system.entity.EventProcessingLog;
+import com.example.event_replay_dlq_system.enums.ProcessingStatus;
+import com.example.event_replay_dlq_system.repository.EventProcessingLogRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ProcessingLogWriterTest {
+
+    @Mock
+    private EventProcessingLogRepository eventProcessingLogRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ProcessingLogWriter processingLogWriter;
+
+    @BeforeEach
+    void setUp() {
+        processingLogWriter = new ProcessingLogWriter(eventProcessingLogRepository, jdbcTemplate, new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(processingLogWriter, "mode", "write-behind");
+        ReflectionTestUtils.setField(processingLogWriter, "flushIntervalMs", 1L);
+        ReflectionTestUtils.setField(processingLogWriter, "maxBatchSize", 500);
+        ReflectionTestUtils.setField(processingLogWriter, "maxFlushAttempts", 3);
+        ReflectionTestUtils.setField(processingLogWriter, "retryBackoffMs", 1L);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        processingLogWriter.stop();
+    }
+
+    @Test
+    void write_CoalescesTransitionsOfOneLogIntoOneInsert() throws Exception {
+        EventProcessingLog eLog = newLog("event-1");
+        CompletableFuture<Void> started = processingLogWriter.write(eLog);
+        eLog.setStatus(ProcessingStatus.SUCCESS);
+        CompletableFuture<Void> done = processingLogWriter.write(eLog);
+
+        assertSame(started, done);
+        when(eventProcessingLogRepository.saveAll(anyList())).thenAnswer(assignIds(10L));
+        processingLogWriter.start();
+        done.get(5, TimeUnit.SECONDS);
+
+        ArgumentCaptor<List<EventProcessingLog>> inserted = listCaptor();
+        verify(eventProcessingLogRepository).saveAll(inserted.capture());
+        assertEquals(1, inserted.getValue().size());
+        assertEquals(ProcessingStatus.SUCCESS, inserted.getValue().get(0).getStatus());
+        assertNotSame(eLog, inserted.getValue().get(0));
+    }
+
+    @Test
+    void flush_InsertsNewLogsAndBatchUpdatesStoredOnes() throws Exception {
+        EventProcessingLog created = newLog("event-1");
+        EventProcessingLog stored = newLog("event-2");
+        stored.setId(5L);
+        CompletableFuture<Void> insert = processingLogWriter.write(created);
+        CompletableFuture<Void> update = processingLogWriter.write(stored);
+
+        when(eventProcessingLogRepository.saveAll(anyList())).thenAnswer(assignIds(10L));
+        processingLogWriter.start();
+        CompletableFuture.allOf(insert, update).get(5, TimeUnit.SECONDS);
+
+        ArgumentCaptor<List<EventProcessingLog>> inserted = listCaptor();
+        verify(eventProcessingLogRepository).saveAll(inserted.capture());
+        assertEquals("event-1", inserted.getValue().get(0).getEventId());
+
+        ArgumentCaptor<Collection<Object>> updated = ArgumentCaptor.captor();
+        verify(jdbcTemplate).batchUpdate(anyString(), updated.capture(), eq(1), any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(1, updated.getValue().size());
+    }
+
+    @Test
+    void flush_SetsIdOfInsertedRowOnTheWrittenLog() throws Exception {
+        EventProcessingLog eLog = newLog("event-1");
+        CompletableFuture<Void> durable = processingLogWriter.write(eLog);
+
+        when(eventProcessingLogRepository.saveAll(anyList())).thenAnswer(assignIds(42L));
+        processingLogWriter.start();
+        durable.get(5, TimeUnit.SECONDS);
+
+        assertEquals(42L, eLog.getId());
+    }
+
+    @Test
+    void flush_FailedBatch_UpsertsRowsOneByOne() throws Exception {
+        EventProcessingLog eLog = newLog("event-1");
+        CompletableFuture<Void> durable = processingLogWriter.write(eLog);
+
+        when(eventProcessingLogRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("uk_event_processor"));
+        when(jdbcTemplate.queryForObject(contains("ON CONFLICT"), eq(Long.class), any(Object[].class))).thenReturn(7L);
+        processingLogWriter.start();
+        durable.get(5, TimeUnit.SECONDS);
+
+        assertEquals(7L, eLog.getId());
+    }
+
+    @Test
+    void flush_RowFailingOnce_IsRetriedAfterBackoff() throws Exception {
+        EventProcessingLog eLog = newLog("event-1");
+        CompletableFuture<Void> durable = processingLogWriter.write(eLog);
+
+        when(eventProcessingLogRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("uk_event_processor"));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any(Object[].class)))
+                .thenThrow(new IllegalStateException("connection reset"))
+                .thenReturn(7L);
+        processingLogWriter.start();
+        durable.get(5, TimeUnit.SECONDS);
+
+        verify(jdbcTemplate, times(2)).queryForObject(anyString(), eq(Long.class), any(Object[].class));
+        assertEquals(7L, eLog.getId());
+    }
+
+    @Test
+    void flush_PoisonRow_FailsItsWriteWithoutHoldingBackTheOthers() throws Exception {
+        EventProcessingLog poison = newLog("poison");
+        EventProcessingLog healthy = newLog("event-1");
+        CompletableFuture<Void> failed = processingLogWriter.write(poison);
+        CompletableFuture<Void> durable = processingLogWriter.write(healthy);
+
+        AtomicInteger poisonAttempts = new AtomicInteger();
+        when(eventProcessingLogRepository.saveAll(anyList())).thenThrow(new DataIntegrityViolationException("bad row"));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), any(Object[].class))).thenAnswer(invocation -> {
+            if ("poison".equals(invocation.getArgument(2))) {
+                poisonAttempts.incrementAndGet();
+                throw new DataIntegrityViolationException("bad row");
+            }
+            return 7L;
+        });
+        processingLogWriter.start();
+
+        durable.get(5, TimeUnit.SECONDS);
+        ExecutionException thrown = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DataIntegrityViolationException.class, thrown.getCause());
+        assertEquals(3, poisonAttempts.get());
+        assertEquals(7L, healthy.getId());
+        assertNull(poison.getId());
+        verify(eventProcessingLogRepository, times(1)).saveAll(anyList());
+    }
+
+    @Test
+    void write_SyncMode_SavesRightAway() {
+        ReflectionTestUtils.setField(processingLogWriter, "mode", "sync");
+        EventProcessingLog eLog = newLog("event-1");
+
+        assertTrue(processingLogWriter.write(eLog).isDone());
+        verify(eventProcessingLogRepository).save(eLog);
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList(), anyInt(), any(ParameterizedPreparedStatementSetter.class));
+    }
+
+    private static EventProcessingLog newLog(String eventId) {
+        EventProcessingLog eLog = new EventProcessingLog();
+        eLog.setEventId(eventId);
+        eLog.setProcessorName("OrderEventProcessor");
+        eLog.setStatus(ProcessingStatus.PROCESSING);
+        eLog.setAttemptCount(1);
+        return eLog;
+    }
+
+    private static Answer<List<EventProcessingLog>> assignIds(long firstId) {
+        return invocation -> {
+            List<EventProcessingLog> logs = invocation.getArgument(0);
+            long id = firstId;
+            for (EventProcessingLog eLog : logs) {
+                eLog.setId(id++);
+            }
+            return logs;
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<EventProcessingLog>> listCaptor() {
+        return ArgumentCaptor.forClass((Class<List<EventProcessingLog>>) (Class<?>) List.class);
+    }
+}
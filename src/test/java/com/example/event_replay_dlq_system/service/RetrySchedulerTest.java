@@ -1,89 +1,97 @@
 package com.example.event_replay_dlq_system.service;
 
-import com.example.event_replay_dlq_system.dto.EventPublishResponseDTO;
 import com.example.event_replay_dlq_system.entity.Event;
 import com.example.event_replay_dlq_system.entity.EventProcessingLog;
 import com.example.event_replay_dlq_system.enums.ProcessingStatus;
 import com.example.event_replay_dlq_system.repository.EventProcessingLogRepository;
+import com.example.event_replay_dlq_system.service.retry.RetryBackoffPolicy;
+import com.example.event_replay_dlq_system.service.retry.RetryBudget;
+import com.example.event_replay_dlq_system.service.retry.RetryShardLeases;
+import com.example.event_replay_dlq_system.service.retry.TieredRetryTopics;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import kafka.Kafka;
-import org.apache.commons.digester.annotations.rules.SetProperty;
-import org.apache.kafka.clients.producer.KafkaProducer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Collection;
-import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.doNothing;
-import static org.mockito.Mockito.when;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.*;
-import static org.junit.jupiter.api.Assertions.*;
-import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 public class RetrySchedulerTest {
 
-    @Mock
-    private EventProcessingLogRepository eventProcessingLogRepository;
+    private static final List<String> KEYS = RetrySchedulerService.keys(0);
 
     @Mock
-    private ValueOperations<String, Object> valueOperations;
+    private EventProcessingLogRepository eventProcessingLogRepository;
 
     @Mock
     private ObjectMapper objectMapper;
 
     @Mock
-    private RedisTemplate<String, Object> redisTemplate;
+    private StringRedisTemplate stringRedisTemplate;
 
     @Mock
     private KafkaProducerService kafkaProducerService;
 
+    @Mock
+    private TieredRetryTopics tieredRetryTopics;
+
+    @Mock
+    private RetryShardLeases retryShardLeases;
+
+    @Mock
+    private RetryBackoffPolicy retryBackoffPolicy;
+
+    @Mock
+    private RetryBudget retryBudget;
+
     @InjectMocks
     private RetrySchedulerService retrySchedulerService;
 
 
-
     private Event mockEvent;
     private EventProcessingLog mockLog;
 
     @BeforeEach
     void setUp() {
-        mockEvent = Event.builder()
-                .eventId("event-123")
-                .eventType("OrderCreated")
-                .payload("{\"eventId\":\"event-123\"}")
-                .sourceSystem("OrderService")
-                .correlationId("order-12345")
-                .build();
-
-        mockLog = EventProcessingLog.builder()
-                .id(1L)
-                .eventId("event-123")
-                .processorName("OrderEventProcessor")
-                .status(ProcessingStatus.PENDING)
-                .attemptCount(1)
-                .maxAttempts(3)
-                .build();
-
-        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
-
-        retrySchedulerService = spy(retrySchedulerService);
+        mockEvent = new Event();
+        mockEvent.setEventId("event-123");
+        mockEvent.setEventType("OrderCreated");
+        mockEvent.setPayload("{\"eventId\":\"event-123\"}");
+        mockEvent.setSourceSystem("OrderService");
+        mockEvent.setCorrelationId("order-12345");
+
+        mockLog = new EventProcessingLog();
+        mockLog.setId(1L);
+        mockLog.setEventId("event-123");
+        mockLog.setProcessorName("OrderEventProcessor");
+        mockLog.setStatus(ProcessingStatus.PENDING);
+        mockLog.setAttemptCount(1);
+        mockLog.setMaxAttempts(3);
+
+        ReflectionTestUtils.setField(retrySchedulerService, "batchSize", 2);
+        ReflectionTestUtils.setField(retrySchedulerService, "leaseMs", 1000L);
+        ReflectionTestUtils.setField(retrySchedulerService, "shards", 1);
+        ReflectionTestUtils.setField(retrySchedulerService, "scheduleChannel", "event:retry:scheduled");
     }
 
     @Test
@@ -91,22 +99,23 @@ public class RetrySchedulerTest {
 
         String processorName = "OrderEventProcessor";
         int attemptCount = 1;
-        String expectedKey = "event:retry:event-123:OrderEventProcessor";
         String eventJson = "{\"eventId\":\"event-123\"}";
-        int expectedDelay = 2;
-
 
         when(objectMapper.writeValueAsString(mockEvent)).thenReturn(eventJson);
-        when(redisTemplate.getExpire(expectedKey)).thenReturn(2L);
-        when(redisTemplate.hasKey(expectedKey)).thenReturn(true);
         when(eventProcessingLogRepository.getByEventIdAndProcessorName(mockEvent.getEventId(), processorName)).thenReturn(Optional.of(mockLog));
-        when(eventProcessingLogRepository.save(any(EventProcessingLog.class))).thenReturn(mockLog);
-
+        when(retryBackoffPolicy.delay(attemptCount)).thenReturn(Duration.ofSeconds(2));
+        when(retryBudget.reserve(processorName)).thenReturn(Duration.ZERO);
 
+        long before = System.currentTimeMillis();
         retrySchedulerService.scheduleRetry(mockEvent, processorName, attemptCount);
 
-        verify(valueOperations).set(expectedKey, eventJson, Duration.ofSeconds(expectedDelay));
-        verify(eventProcessingLogRepository).save(any(EventProcessingLog.class));
+        ArgumentCaptor<String> dueAt = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<String> scheduled = ArgumentCaptor.forClass(String.class);
+        verify(stringRedisTemplate).execute(eq(RetrySchedulerService.SCHEDULE_SCRIPT), eq(KEYS),
+                eq("event-123:OrderEventProcessor"), dueAt.capture(), eq(eventJson),
+                eq("event:retry:scheduled"), scheduled.capture());
+        assertTrue(Long.parseLong(dueAt.getValue()) >= before + 2000);
+        assertEquals("0:" + dueAt.getValue(), scheduled.getValue());
 
         ArgumentCaptor<EventProcessingLog> logCaptor = ArgumentCaptor.forClass(EventProcessingLog.class);
         verify(eventProcessingLogRepository).save(logCaptor.capture());
@@ -119,122 +128,123 @@ public class RetrySchedulerTest {
 
     }
 
-
     @Test
-    void scheduleRetry_WithMaxAttempts() throws JsonProcessingException {
+    void scheduleRetry_ThrowsException_WhenEventProcessingLogNotFound() throws JsonProcessingException {
         String processorName = "OrderEventProcessor";
-        int attemptCount = 3;
-        int maxAttempts = 3;
-        String expectedKey = "event:retry:event-123:OrderEventProcessor";
         String eventJson = "{\"eventId\":\"event-123\"}";
-        int expectedDelay = 8;
 
         when(objectMapper.writeValueAsString(mockEvent)).thenReturn(eventJson);
-        when(redisTemplate.getExpire(expectedKey)).thenReturn(8L);
-        when(redisTemplate.hasKey(expectedKey)).thenReturn(true);
-        when(eventProcessingLogRepository.getByEventIdAndProcessorName(mockEvent.getEventId(), processorName)).thenReturn(Optional.of(mockLog));
-
-        retrySchedulerService.scheduleRetry(mockEvent, processorName, attemptCount);
-
-        assertEquals(maxAttempts, mockLog.getMaxAttempts());
-
-        verify(valueOperations).set(expectedKey, eventJson, Duration.ofSeconds(expectedDelay));
+        when(eventProcessingLogRepository.getByEventIdAndProcessorName(mockEvent.getEventId(), processorName)).thenReturn(Optional.empty());
+        when(retryBackoffPolicy.delay(1)).thenReturn(Duration.ofSeconds(2));
+        when(retryBudget.reserve(processorName)).thenReturn(Duration.ZERO);
 
+        assertThrows(Exception.class, () -> retrySchedulerService.scheduleRetry(mockEvent, processorName, 1));
+        verify(eventProcessingLogRepository, never()).save(any(EventProcessingLog.class));
     }
 
     @Test
-    void scheduleRetry_ThrowsException_WhenEventProcessingLogNotFound() throws JsonProcessingException {
+    void scheduleRetry_OverBudget_IsDeferred() throws JsonProcessingException {
         String processorName = "OrderEventProcessor";
-        int attemptCount = 1;
-        String eventJson = "{\"eventId\":\"event-123\"}";
 
-        when(objectMapper.writeValueAsString(mockEvent)).thenReturn(eventJson);
-        when(redisTemplate.getExpire(anyString())).thenReturn(2L);
-        when(redisTemplate.hasKey(anyString())).thenReturn(true);
-        when(eventProcessingLogRepository.getByEventIdAndProcessorName(mockEvent.getEventId(), processorName)).thenReturn(Optional.empty());
+        when(objectMapper.writeValueAsString(mockEvent)).thenReturn("{}");
+        when(eventProcessingLogRepository.getByEventIdAndProcessorName(mockEvent.getEventId(), processorName)).thenReturn(Optional.of(mockLog));
+        when(retryBackoffPolicy.delay(1)).thenReturn(Duration.ofSeconds(2));
+        when(retryBudget.reserve(processorName)).thenReturn(Duration.ofSeconds(30));
 
-        assertThrows(Exception.class, () -> retrySchedulerService.scheduleRetry(mockEvent, processorName, attemptCount));
-        verify(valueOperations).set(anyString(), anyString(), any(Duration.class));
-        verify(eventProcessingLogRepository, never()).save(any(EventProcessingLog.class));
+        long before = System.currentTimeMillis();
+        retrySchedulerService.scheduleRetry(mockEvent, processorName, 1);
 
+        ArgumentCaptor<String> dueAt = ArgumentCaptor.forClass(String.class);
+        verify(stringRedisTemplate).execute(eq(RetrySchedulerService.SCHEDULE_SCRIPT), eq(KEYS),
+                eq("event-123:OrderEventProcessor"), dueAt.capture(), eq("{}"), anyString(), anyString());
+        assertTrue(Long.parseLong(dueAt.getValue()) >= before + 32_000);
+        assertTrue(mockLog.getNextRetryTime().isAfter(LocalDateTime.now().plusSeconds(31)));
     }
 
-
     @Test
-    void processRetryKey_Success() throws JsonProcessingException {
-        String retryKey = "event:retry:event-123:OrderEventProcessor";
-        String eventJson = "{\"eventId\":\"event-123\"}";
+    void deferRetry_DoesNotTouchProcessingLog() throws JsonProcessingException {
+        when(objectMapper.writeValueAsString(mockEvent)).thenReturn("{}");
 
-        when(redisTemplate.getExpire(retryKey)).thenReturn(0L); // TTL <= 1
-        when(redisTemplate.opsForValue().get(retryKey)).thenReturn(eventJson);
-        when(objectMapper.readValue(eventJson, Event.class)).thenReturn(mockEvent);
-        when(redisTemplate.delete(retryKey)).thenReturn(true);
+        retrySchedulerService.deferRetry(mockEvent, "OrderEventProcessor", Duration.ofSeconds(5));
 
-        retrySchedulerService.processRetryKey(retryKey);
+        verify(stringRedisTemplate).execute(eq(RetrySchedulerService.SCHEDULE_SCRIPT), eq(KEYS),
+                eq("event-123:OrderEventProcessor"), anyString(), eq("{}"), eq("event:retry:scheduled"), startsWith("0:"));
+        verifyNoInteractions(eventProcessingLogRepository);
+    }
 
-        verify(valueOperations).get(retryKey);
-        verify(redisTemplate).delete(retryKey);
-        verify(redisTemplate).getExpire(retryKey);
-        verify(objectMapper).readValue(eventJson, Event.class);
-        verify(kafkaProducerService).sendRetryEvent(mockEvent);
+    @Test
+    void publishDueRetries_PublishesAndAcksClaimedRetries() throws Exception {
+        String eventJson = "{\"eventId\":\"event-123\"}";
+        when(stringRedisTemplate.execute(eq(RetrySchedulerService.CLAIM_SCRIPT), eq(KEYS), anyString(), eq("2"), anyString()))
+                .thenReturn(List.of("event-123:OrderEventProcessor", eventJson));
+        when(objectMapper.readValue(eventJson, Event.class)).thenReturn(mockEvent);
+        when(kafkaProducerService.sendRetryEventWithAck(mockEvent)).thenReturn(CompletableFuture.completedFuture(null));
 
+        assertEquals(1, retrySchedulerService.publishDueRetries(0));
 
+        verify(kafkaProducerService).sendRetryEventWithAck(mockEvent);
+        verify(stringRedisTemplate).execute(eq(RetrySchedulerService.ACK_SCRIPT), eq(KEYS), eq("event-123:OrderEventProcessor"));
     }
 
     @Test
-    void processRetryKey_DoesNothing_WhenKeyDoesNotExist() {
-        String retryKey = "event:retry:event-123:OrderEventProcessor";
-
-        when(redisTemplate.getExpire(retryKey)).thenReturn(-2L);
+    void publishDueRetries_FailedSend_IsNotAcked() throws Exception {
+        String eventJson = "{\"eventId\":\"event-123\"}";
+        when(stringRedisTemplate.execute(eq(RetrySchedulerService.CLAIM_SCRIPT), eq(KEYS), anyString(), anyString(), anyString()))
+                .thenReturn(List.of("event-123:OrderEventProcessor", eventJson));
+        when(objectMapper.readValue(eventJson, Event.class)).thenReturn(mockEvent);
+        when(kafkaProducerService.sendRetryEventWithAck(mockEvent))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
 
-        retrySchedulerService.processRetryKey(retryKey);
+        assertEquals(1, retrySchedulerService.publishDueRetries(0));
 
-        verify(redisTemplate).getExpire(retryKey);
-        verify(valueOperations, never()).get(anyString());
-        verify(kafkaProducerService, never()).sendRetryEvent(any());
-        verify(redisTemplate, never()).delete(anyString());
+        verify(stringRedisTemplate, never()).execute(eq(RetrySchedulerService.ACK_SCRIPT), anyList(), any(Object[].class));
     }
 
     @Test
-    void processRetryKey_DoesNothing_WhenTTLGreaterThan1() {
-        String retryKey = "event:retry:event-123:OrderEventProcessor";
-
-        when(redisTemplate.getExpire(retryKey)).thenReturn(10L); // TTL > 1
+    void processExpiredRetries_DrainsOnlyOwnedShards() {
+        ReflectionTestUtils.setField(retrySchedulerService, "shards", 4);
+        when(retryShardLeases.ownedShards()).thenReturn(Set.of(2));
+        when(stringRedisTemplate.execute(eq(RetrySchedulerService.CLAIM_SCRIPT), anyList(), anyString(), anyString(), anyString()))
+                .thenReturn(List.of());
 
-        retrySchedulerService.processRetryKey(retryKey);
+        retrySchedulerService.processExpiredRetries();
 
-        verify(redisTemplate).getExpire(retryKey);
-        verify(valueOperations, never()).get(anyString());
-        verify(kafkaProducerService, never()).sendRetryEvent(any());
-        verify(redisTemplate, never()).delete(anyString());
+        verify(stringRedisTemplate).execute(eq(RetrySchedulerService.CLAIM_SCRIPT), eq(RetrySchedulerService.keys(2)), anyString(), anyString(), anyString());
+        verifyNoMoreInteractions(stringRedisTemplate);
     }
 
     @Test
-    void processExpiredRetries() {
-
-        Set<String> redisKeys = Set.of(
-                "event:retry:event-123:OrderEventProcessor",
-                "event:retry:event-123:PaymentEventProcessor"
-        );
-
+    void processExpiredRetries_DoesNothing_WhenNothingIsDue() {
+        when(retryShardLeases.ownedShards()).thenReturn(Set.of(0));
+        when(stringRedisTemplate.execute(eq(RetrySchedulerService.CLAIM_SCRIPT), eq(KEYS), anyString(), anyString(), anyString()))
+                .thenReturn(List.of());
 
+        retrySchedulerService.processExpiredRetries();
 
-        when(redisTemplate.keys("event:retry:*")).thenReturn(redisKeys);
+        verifyNoInteractions(kafkaProducerService);
+    }
 
-        retrySchedulerService.processExpiredRetries();
+    @Test
+    void scheduleRetry_TopicsBackend_PublishesToTier() throws JsonProcessingException {
+        when(tieredRetryTopics.isEnabled()).thenReturn(true);
+        when(eventProcessingLogRepository.getByEventIdAndProcessorName(mockEvent.getEventId(), "OrderEventProcessor")).thenReturn(Optional.of(mockLog));
+        when(retryBackoffPolicy.delay(2)).thenReturn(Duration.ofSeconds(4));
+        when(retryBudget.reserve("OrderEventProcessor")).thenReturn(Duration.ZERO);
 
-        verify(retrySchedulerService, times(redisKeys.size())).processRetryKey(anyString());
+        retrySchedulerService.scheduleRetry(mockEvent, "OrderEventProcessor", 2);
 
+        verify(tieredRetryTopics).publish(mockEvent, Duration.ofSeconds(4));
+        verifyNoInteractions(stringRedisTemplate);
+        verify(eventProcessingLogRepository).save(mockLog);
     }
 
     @Test
-    void processExpiredRetries_DoesNothing_WhenKeyDoesNotExist() {
-        when(redisTemplate.keys("event:retry:*")).thenReturn(Collections.emptySet());
-
+    void cancelRetry_RemovesMember() {
+        when(stringRedisTemplate.execute(RetrySchedulerService.CANCEL_SCRIPT, KEYS, "event-123:OrderEventProcessor")).thenReturn(1L);
 
-        retrySchedulerService.processExpiredRetries();
+        retrySchedulerService.cancelRetry("event-123", "OrderEventProcessor");
 
-        verify(retrySchedulerService, never()).processRetryKey(anyString());
+        verify(stringRedisTemplate).execute(RetrySchedulerService.CANCEL_SCRIPT, KEYS, "event-123:OrderEventProcessor");
     }
 
 }
@@ -0,0 +1,99 @@
+package com.example.event_replay_dlq_system.service.breaker;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    private final CircuitBreaker breaker = new CircuitBreaker(
+            new CircuitBreaker.Settings(10, 4, 0.5, 30_000, 1_000, 2), now::get);
+
+    @Test
+    void failuresBelowMinimumCalls_KeepCircuitClosed() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    void failureRateAtThreshold_OpensCircuit() {
+        breaker.onSuccess();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+        assertEquals(30_000, breaker.millisUntilPermitted());
+    }
+
+    @Test
+    void oldOutcomes_LeaveTheWindow() {
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+        for (int i = 0; i < 10; i++) {
+            breaker.onSuccess();
+        }
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void afterOpenDuration_ProbesCloseCircuit() {
+        open();
+        now.addAndGet(30_000);
+
+        assertTrue(breaker.tryAcquirePermission());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+
+        breaker.onSuccess();
+        assertTrue(breaker.tryAcquirePermission());
+        breaker.onSuccess();
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    void failedProbe_ReopensCircuit() {
+        open();
+        now.addAndGet(30_000);
+        assertTrue(breaker.tryAcquirePermission());
+
+        breaker.onFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    void releasedProbe_LetsTheNextProbeGoRightAway() {
+        open();
+        now.addAndGet(30_000);
+        assertTrue(breaker.tryAcquirePermission());
+        assertFalse(breaker.tryAcquirePermission());
+
+        breaker.releasePermission();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.tryAcquirePermission());
+    }
+
+    private void open() {
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure();
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.event_replay_dlq_system.service.bulkhead;
+
+import com.example.event_replay_dlq_system.exception.ProcessingException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveBulkheadTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private AdaptiveBulkhead bulkhead(int initialLimit) {
+        AdaptiveBulkhead.Settings settings = new AdaptiveBulkhead.Settings(initialLimit, 1, 64, 100, 0.5, 2.0, 100, 0.5);
+        return new AdaptiveBulkhead(settings, Runnable::run, now::get);
+    }
+
+    @Test
+    void submit_OverLimit_QueuesUntilSlotFrees() throws Exception {
+        AdaptiveBulkhead bulkhead = bulkhead(2);
+        List<CompletableFuture<Void>> calls = new ArrayList<>();
+        List<Integer> started = new ArrayList<>();
+
+        for (int i = 0; i < 3; i++) {
+            int index = i;
+            CompletableFuture<Void> call = new CompletableFuture<>();
+            calls.add(call);
+            bulkhead.submit(() -> {
+                started.add(index);
+                return call;
+            });
+        }
+
+        assertEquals(List.of(0, 1), started);
+        assertEquals(2, bulkhead.getInFlight());
+        assertEquals(1, bulkhead.getQueueDepth());
+
+        calls.get(0).complete(null);
+
+        assertEquals(List.of(0, 1, 2), started);
+        assertEquals(0, bulkhead.getQueueDepth());
+    }
+
+    @Test
+    void fastCallsAtTheLimit_GrowLimit() throws Exception {
+        AdaptiveBulkhead bulkhead = bulkhead(2);
+
+        for (int round = 0; round < 10; round++) {
+            runConcurrently(bulkhead, bulkhead.getLimit(), 1);
+        }
+
+        assertTrue(bulkhead.getLimit() > 2, "limit: " + bulkhead.getLimit());
+    }
+
+    @Test
+    void slowCall_ShrinksLimit() throws Exception {
+        AdaptiveBulkhead bulkhead = bulkhead(16);
+        runConcurrently(bulkhead, 1, 1);
+
+        runConcurrently(bulkhead, 1, 10);
+
+        assertEquals(8, bulkhead.getLimit());
+    }
+
+    @Test
+    void unexpectedErrors_ShrinkLimit_ProcessingFailuresDoNot() throws Exception {
+        AdaptiveBulkhead bulkhead = bulkhead(16);
+
+        for (int i = 0; i < 20; i++) {
+            bulkhead.submit(() -> CompletableFuture.failedFuture(new ProcessingException("expired card")));
+        }
+        assertEquals(16, bulkhead.getLimit());
+
+        for (int i = 0; i < 20; i++) {
+            now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+            bulkhead.submit(() -> CompletableFuture.failedFuture(new IllegalStateException("downstream down")));
+        }
+        assertTrue(bulkhead.getLimit() < 16, "limit: " + bulkhead.getLimit());
+    }
+
+    /**
+     * Starts the given number of calls and completes them after the latency
+     */
+    private void runConcurrently(AdaptiveBulkhead bulkhead, int calls, long latencyMillis) throws Exception {
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        for (int i = 0; i < calls; i++) {
+            CompletableFuture<Void> call = new CompletableFuture<>();
+            pending.add(call);
+            bulkhead.submit(() -> call);
+        }
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        pending.forEach(call -> call.complete(null));
+    }
+}
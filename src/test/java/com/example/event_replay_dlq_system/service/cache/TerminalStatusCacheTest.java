@@ -0,0 +1,80 @@
+package com.example.event_replay_dlq_system.service.cache;
+
+import com.example.event_replay_dlq_system.enums.ProcessingStatus;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TerminalStatusCacheTest {
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final TerminalStatusCache cache = new TerminalStatusCache(3, 60, 1000, 0.01, now::get);
+
+    @Test
+    void get_AfterPut_ReturnsSuccess() {
+        cache.put("evt-1", "OrderProcessor", ProcessingStatus.SUCCESS);
+
+        assertEquals(Optional.of(ProcessingStatus.SUCCESS), cache.get("evt-1", "OrderProcessor"));
+        assertTrue(cache.get("evt-1", "PaymentProcessor").isEmpty());
+    }
+
+    @Test
+    void put_StatusOtherThanSuccess_IsIgnored() {
+        cache.put("evt-1", "OrderProcessor", ProcessingStatus.RETRY);
+        // a manual retry can reset a DLQ log, it must always be read from the database
+        cache.put("evt-2", "OrderProcessor", ProcessingStatus.DLQ);
+
+        assertTrue(cache.get("evt-1", "OrderProcessor").isEmpty());
+        assertTrue(cache.get("evt-2", "OrderProcessor").isEmpty());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void get_AfterTtl_ReturnsEmpty() {
+        cache.put("evt-1", "OrderProcessor", ProcessingStatus.SUCCESS);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+
+        assertTrue(cache.get("evt-1", "OrderProcessor").isEmpty());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void put_OverMaxSize_EvictsLeastRecentlyUsed() {
+        cache.put("evt-1", "OrderProcessor", ProcessingStatus.SUCCESS);
+        cache.put("evt-2", "OrderProcessor", ProcessingStatus.SUCCESS);
+        cache.put("evt-3", "OrderProcessor", ProcessingStatus.SUCCESS);
+        cache.get("evt-1", "OrderProcessor");
+
+        cache.put("evt-4", "OrderProcessor", ProcessingStatus.SUCCESS);
+
+        assertEquals(3, cache.size());
+        assertTrue(cache.get("evt-2", "OrderProcessor").isEmpty());
+        assertTrue(cache.get("evt-1", "OrderProcessor").isPresent());
+    }
+
+    @Test
+    void bloomFilter_NeverReturnsFalseNegatives() {
+        BloomFilter filter = new BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("evt-" + i);
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("evt-" + i));
+        }
+
+        int falsePositives = 0;
+        for (int i = 10_000; i < 20_000; i++) {
+            if (filter.mightContain("evt-" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.event_replay_dlq_system.service.outbox;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class OutboxRelayTest {
+
+    @Mock
+    private OutboxService outboxService;
+
+    @InjectMocks
+    private OutboxRelay outboxRelay;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(outboxRelay, "batchSize", 2);
+        ReflectionTestUtils.setField(outboxRelay, "nodeIndex", 1);
+        ReflectionTestUtils.setField(outboxRelay, "nodeCount", 3);
+        when(outboxService.getPartitions()).thenReturn(8);
+        outboxRelay.init();
+    }
+
+    @Test
+    void relay_DrainsFullBatchesOfOwnedPartitions() {
+        when(outboxService.relayBatch(List.of(1, 4, 7), 2)).thenReturn(2, 2, 1);
+
+        outboxRelay.relay();
+
+        verify(outboxService, times(3)).relayBatch(List.of(1, 4, 7), 2);
+    }
+
+    @Test
+    void relay_FailedBatch_WaitsForNextPoll() {
+        when(outboxService.relayBatch(anyCollection(), eq(2))).thenThrow(new IllegalStateException("database down"));
+
+        assertDoesNotThrow(() -> outboxRelay.relay());
+
+        verify(outboxService, times(1)).relayBatch(anyCollection(), eq(2));
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.event_replay_dlq_system.service.outbox;
+
+import com.example.event_replay_dlq_system.entity.Event;
+import com.example.event_replay_dlq_system.entity.OutboxEvent;
+import com.example.event_replay_dlq_system.enums.OutboxStatus;
+import com.example.event_replay_dlq_system.repository.EventRepository;
+import com.example.event_replay_dlq_system.repository.OutboxEventRepository;
+import com.example.event_replay_dlq_system.service.KafkaProducerService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class OutboxServiceTest {
+
+    private static final List<Integer> PARTITIONS = List.of(0, 1);
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private EventRepository eventRepository;
+
+    @Mock
+    private KafkaProducerService kafkaProducerService;
+
+    @InjectMocks
+    private OutboxService outboxService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(outboxService, "partitions", 16);
+        ReflectionTestUtils.setField(outboxService, "ackTimeoutMs", 200L);
+        ReflectionTestUtils.setField(outboxService, "graceMs", 15_000L);
+        ReflectionTestUtils.setField(outboxService, "leaseMs", 60_000L);
+    }
+
+    @Test
+    void relayBatch_ClaimsRowsOlderThanGraceWithLease() {
+        when(outboxEventRepository.claimPendingBatch(anyCollection(), any(), any(), any(), anyInt())).thenReturn(List.of());
+
+        assertEquals(0, outboxService.relayBatch(PARTITIONS, 10));
+
+        ArgumentCaptor<LocalDateTime> createdBefore = ArgumentCaptor.forClass(LocalDateTime.class);
+        ArgumentCaptor<LocalDateTime> now = ArgumentCaptor.forClass(LocalDateTime.class);
+        ArgumentCaptor<LocalDateTime> leaseUntil = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(outboxEventRepository).claimPendingBatch(eq(PARTITIONS), createdBefore.capture(), now.capture(), leaseUntil.capture(), eq(10));
+        assertEquals(Duration.ofMillis(15_000), Duration.between(createdBefore.getValue(), now.getValue()));
+        assertEquals(Duration.ofMillis(60_000), Duration.between(now.getValue(), leaseUntil.getValue()));
+        verifyNoInteractions(kafkaProducerService);
+    }
+
+    @Test
+    void relayBatch_MarksAckedRowsSent_LeavesFailedOnesPending() {
+        when(outboxEventRepository.claimPendingBatch(anyCollection(), any(), any(), any(), anyInt()))
+                .thenReturn(List.of(row(1L, "evt-1"), row(2L, "evt-2")));
+        Event acked = event("evt-1");
+        Event rejected = event("evt-2");
+        when(eventRepository.findAllByEventIdIn(List.of("evt-1", "evt-2"))).thenReturn(List.of(acked, rejected));
+        when(kafkaProducerService.sendEventWithAck(acked)).thenReturn(CompletableFuture.completedFuture(null));
+        when(kafkaProducerService.sendEventWithAck(rejected)).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker down")));
+
+        assertEquals(2, outboxService.relayBatch(PARTITIONS, 10));
+
+        verify(outboxEventRepository).markSent(eq(List.of(1L)), eq(OutboxStatus.SENT), any());
+        verify(outboxEventRepository).markFailed(List.of(2L), "broker down");
+        verify(outboxEventRepository, never()).deleteAllByIdInBatch(anyList());
+    }
+
+    @Test
+    void relayBatch_RowsNotAckedInTime_StayPending() {
+        when(outboxEventRepository.claimPendingBatch(anyCollection(), any(), any(), any(), anyInt()))
+                .thenReturn(List.of(row(1L, "evt-1")));
+        Event event = event("evt-1");
+        when(eventRepository.findAllByEventIdIn(List.of("evt-1"))).thenReturn(List.of(event));
+        when(kafkaProducerService.sendEventWithAck(event)).thenReturn(new CompletableFuture<>());
+
+        outboxService.relayBatch(PARTITIONS, 10);
+
+        verify(outboxEventRepository).markFailed(eq(List.of(1L)), anyString());
+        verify(outboxEventRepository, never()).markSent(anyCollection(), any(), any());
+    }
+
+    @Test
+    void relayBatch_DeletesRowsWhoseEventIsGone() {
+        when(outboxEventRepository.claimPendingBatch(anyCollection(), any(), any(), any(), anyInt()))
+                .thenReturn(List.of(row(1L, "evt-1")));
+        when(eventRepository.findAllByEventIdIn(List.of("evt-1"))).thenReturn(List.of());
+
+        assertEquals(1, outboxService.relayBatch(PARTITIONS, 10));
+
+        verify(outboxEventRepository).deleteAllByIdInBatch(List.of(1L));
+        verifyNoInteractions(kafkaProducerService);
+        verify(outboxEventRepository, never()).markSent(anyCollection(), any(), any());
+        verify(outboxEventRepository, never()).markFailed(anyCollection(), any());
+    }
+
+    @Test
+    void publishNow_AckedRowIsMarkedSentByTheNextFlush() {
+        Event event = event("evt-1");
+        when(kafkaProducerService.sendEventWithAck(event)).thenReturn(CompletableFuture.completedFuture(null));
+
+        outboxService.publishNow(row(7L, "evt-1"), event).join();
+        outboxService.flushAcked();
+        outboxService.flushAcked();
+
+        verify(outboxEventRepository, times(1)).markSent(eq(List.of(7L)), eq(OutboxStatus.SENT), any());
+    }
+
+    @Test
+    void publishNow_NoAckWithinTimeout_FailsAndLeavesRowToRelay() {
+        Event event = event("evt-1");
+        when(kafkaProducerService.sendEventWithAck(event)).thenReturn(new CompletableFuture<SendResult<String, Object>>());
+
+        CompletableFuture<SendResult<String, Object>> send = outboxService.publishNow(row(7L, "evt-1"), event);
+
+        ExecutionException thrown = assertThrows(ExecutionException.class, send::get);
+        assertInstanceOf(TimeoutException.class, thrown.getCause());
+        outboxService.flushAcked();
+        verify(outboxEventRepository, never()).markSent(anyCollection(), any(), any());
+    }
+
+    private static OutboxEvent row(Long id, String eventId) {
+        return OutboxEvent.builder()
+                .id(id)
+                .eventId(eventId)
+                .status(OutboxStatus.PENDING)
+                .build();
+    }
+
+    private static Event event(String eventId) {
+        Event event = new Event();
+        event.setEventId(eventId);
+        event.setEventType("OrderCreated");
+        return event;
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.event_replay_dlq_system.service.parallel;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyOrderedExecutorTest {
+
+    private KeyOrderedExecutor executor = new KeyOrderedExecutor(16);
+
+    @AfterEach
+    void tearDown() {
+        executor.close();
+    }
+
+    @Test
+    void submit_SameKey_RunsInSubmissionOrder() throws Exception {
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            futures.add(executor.submit("order-1", () -> {
+                sleep(5 - value % 5);
+                order.add(value);
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), order);
+    }
+
+    @Test
+    void submit_DifferentKeys_RunConcurrently() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        CompletableFuture<Void> first = executor.submit("a", () -> awaitQuietly(bothStarted));
+        CompletableFuture<Void> second = executor.submit("b", () -> awaitQuietly(bothStarted));
+
+        CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+        assertEquals(0, bothStarted.getCount());
+    }
+
+    @Test
+    void submit_FailedTask_DoesNotBlockTheKey() throws Exception {
+        CompletableFuture<Void> failing = executor.submit("a", () -> {
+            throw new IllegalStateException("boom");
+        });
+        AtomicBoolean ran = new AtomicBoolean();
+        CompletableFuture<Void> next = executor.submit("a", () -> ran.set(true));
+
+        next.get(5, TimeUnit.SECONDS);
+        assertTrue(failing.isCompletedExceptionally());
+        assertTrue(ran.get());
+    }
+
+    @Test
+    void submit_BlocksWhenMaxInFlightReached() throws Exception {
+        executor.close();
+        executor = new KeyOrderedExecutor(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit("a", () -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        Thread submitter = Thread.ofVirtual().start(() -> {
+            try {
+                executor.submit("b", () -> { });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        submitter.join(200);
+        assertTrue(submitter.isAlive());
+
+        release.countDown();
+        submitter.join(5000);
+        assertFalse(submitter.isAlive());
+    }
+
+    @Test
+    void constructor_NonPositiveMaxInFlight_Throws() {
+        assertThrows(IllegalArgumentException.class, () -> new KeyOrderedExecutor(0));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        latch.countDown();
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package com.example.event_replay_dlq_system.service.replay;
+
+import com.example.event_replay_dlq_system.entity.Event;
+import com.example.event_replay_dlq_system.entity.ReplayEvent;
+import com.example.event_replay_dlq_system.entity.ReplaySession;
+import com.example.event_replay_dlq_system.enums.ReplaySessionStatus;
+import com.example.event_replay_dlq_system.repository.EventRepository;
+import com.example.event_replay_dlq_system.repository.ReplayEventRepository;
+import com.example.event_replay_dlq_system.repository.ReplaySessionRepository;
+import com.example.event_replay_dlq_system.service.KafkaProducerService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ReplayEngineTest {
+
+    private static final String SESSION_ID = "session-1";
+    private static final List<String> LEASE_KEY = List.of("replay:session-lease:" + SESSION_ID);
+    private static final RedisScript<Long> RENEW_SCRIPT = script("RENEW_SCRIPT");
+    private static final RedisScript<Long> RELEASE_SCRIPT = script("RELEASE_SCRIPT");
+
+    @Mock
+    private EventRepository eventRepository;
+
+    @Mock
+    private ReplayEventRepository replayEventRepository;
+
+    @Mock
+    private ReplaySessionRepository replaySessionRepository;
+
+    @Mock
+    private KafkaProducerService kafkaProducerService;
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private RedisMessageListenerContainer listenerContainer;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @InjectMocks
+    private ReplayEngine replayEngine;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(replayEngine, "chunkSize", 2);
+        ReflectionTestUtils.setField(replayEngine, "defaultEventsPerSecond", 1000.0);
+        ReflectionTestUtils.setField(replayEngine, "minEventsPerSecond", 20.0);
+        ReflectionTestUtils.setField(replayEngine, "burstSeconds", 1.0);
+        ReflectionTestUtils.setField(replayEngine, "poolSize", 1);
+        ReflectionTestUtils.setField(replayEngine, "queueCapacity", 1);
+        ReflectionTestUtils.setField(replayEngine, "awaitTerminationSeconds", 1);
+        ReflectionTestUtils.setField(replayEngine, "controlChannel", "replay:control");
+        ReflectionTestUtils.setField(replayEngine, "leaseMs", 15_000L);
+        replayEngine.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        replayEngine.shutdown();
+    }
+
+    @Test
+    void submit_PublishesEventsInChunksAndCompletes() throws Exception {
+        acquireLease();
+        Event first = event("evt-1");
+        Event second = event("evt-2");
+        when(replayEventRepository.findBySessionIdAndIdGreaterThanOrderByIdAsc(eq(SESSION_ID), eq(0L), any(Limit.class)))
+                .thenReturn(List.of(replayEvent(1L, "evt-1"), replayEvent(2L, "evt-2")));
+        when(replayEventRepository.findBySessionIdAndIdGreaterThanOrderByIdAsc(eq(SESSION_ID), eq(2L), any(Limit.class)))
+                .thenReturn(List.of());
+        when(eventRepository.findAllByEventIdIn(List.of("evt-1", "evt-2"))).thenReturn(List.of(first, second));
+
+        ReplayJob job = replayEngine.submit(session(null));
+        job.getFuture().get(5, TimeUnit.SECONDS);
+
+        verify(kafkaProducerService).sendReplayEvent(first);
+        verify(kafkaProducerService).sendReplayEvent(second);
+        verify(replaySessionRepository).updateCheckpoint(SESSION_ID, 2L);
+        verify(replaySessionRepository).completeIfFinished(eq(SESSION_ID), eq(ReplaySessionStatus.RUNNING), eq(ReplaySessionStatus.COMPLETED), any());
+        verify(stringRedisTemplate).execute(eq(RELEASE_SCRIPT), eq(LEASE_KEY), any(Object[].class));
+        assertFalse(replayEngine.isRunning(SESSION_ID));
+    }
+
+    @Test
+    void submit_ContinuesAfterCheckpoint() throws Exception {
+        acquireLease();
+        when(replayEventRepository.findBySessionIdAndIdGreaterThanOrderByIdAsc(eq(SESSION_ID), eq(7L), any(Limit.class)))
+                .thenReturn(List.of());
+
+        replayEngine.submit(session(7L)).getFuture().get(5, TimeUnit.SECONDS);
+
+        verify(replayEventRepository).findBySessionIdAndIdGreaterThanOrderByIdAsc(eq(SESSION_ID), eq(7L), any(Limit.class));
+        verifyNoInteractions(kafkaProducerService);
+    }
+
+    @Test
+    void signal_PauseStopsBeforeNextEventAndStoresCheckpoint() throws Exception {
+        acquireLease();
+        Event first = event("evt-1");
+        Event second = event("evt-2");
+        when(replayEventRepository.findBySessionIdAndIdGreaterThanOrderByIdAsc(eq(SESSION_ID), eq(0L), any(Limit.class)))
+                .thenReturn(List.of(replayEvent(1L, "evt-1"), replayEvent(2L, "evt-2")));
+        when(eventRepository.findAllByEventIdIn(List.of("evt-1", "evt-2"))).thenReturn(List.of(first, second));
+        doAnswer(invocation -> {
+            replayEngine.signal(SESSION_ID, ReplaySessionStatus.PAUSED);
+            return null;
+        }).when(kafkaProducerService).sendReplayEvent(first);
+
+        replayEngine.submit(session(null)).getFuture().get(5, TimeUnit.SECONDS);
+
+        verify(kafkaProducerService, never()).sendReplayEvent(second);
+        verify(replaySessionRepository).updateCheckpoint(SESSION_ID, 1L);
+        verify(replaySessionRepository, never()).completeIfFinished(anyString(), any(), any(), any());
+        verify(stringRedisTemplate).convertAndSend("replay:control", SESSION_ID + ":PAUSED");
+    }
+
+    @Test
+    void submit_WithoutLease_PausesSessionInsteadOfRunning() {
+        assertThrows(IllegalStateException.class, () -> replayEngine.submit(session(null)));
+
+        verify(replaySessionRepository).updateStatusIfIn(SESSION_ID, List.of(ReplaySessionStatus.RUNNING), ReplaySessionStatus.PAUSED);
+        assertFalse(replayEngine.isRunning(SESSION_ID));
+        verifyNoInteractions(replayEventRepository);
+    }
+
+    @Test
+    void run_FailingJob_MarksSessionFailedAndReleasesLease() throws Exception {
+        acquireLease();
+        when(replayEventRepository.findBySessionIdAndIdGreaterThanOrderByIdAsc(eq(SESSION_ID), eq(0L), any(Limit.class)))
+                .thenThrow(new IllegalStateException("database down"));
+
+        replayEngine.submit(session(null)).getFuture().get(5, TimeUnit.SECONDS);
+
+        verify(replaySessionRepository).updateStatus(SESSION_ID, ReplaySessionStatus.FAILED);
+        verify(stringRedisTemplate).execute(eq(RELEASE_SCRIPT), eq(LEASE_KEY), any(Object[].class));
+    }
+
+    @Test
+    void renewLeases_RenewsLeaseTakenBeforeSubmit() {
+        acquireLease();
+        when(stringRedisTemplate.execute(eq(RENEW_SCRIPT), eq(LEASE_KEY), any(Object[].class))).thenReturn(1L);
+
+        replayEngine.renewLeases();
+
+        verify(stringRedisTemplate).execute(eq(RENEW_SCRIPT), eq(LEASE_KEY), anyString(), eq("15000"));
+    }
+
+    @Test
+    void renewLeases_LostLease_StopsRunningJob() throws Exception {
+        acquireLease();
+        Event first = event("evt-1");
+        Event second = event("evt-2");
+        when(replayEventRepository.findBySessionIdAndIdGreaterThanOrderByIdAsc(eq(SESSION_ID), eq(0L), any(Limit.class)))
+                .thenReturn(List.of(replayEvent(1L, "evt-1"), replayEvent(2L, "evt-2")));
+        when(eventRepository.findAllByEventIdIn(List.of("evt-1", "evt-2"))).thenReturn(List.of(first, second));
+        when(stringRedisTemplate.execute(eq(RENEW_SCRIPT), eq(LEASE_KEY), any(Object[].class))).thenReturn(0L);
+        doAnswer(invocation -> {
+            replayEngine.renewLeases();
+            return null;
+        }).when(kafkaProducerService).sendReplayEvent(first);
+
+        replayEngine.submit(session(null)).getFuture().get(5, TimeUnit.SECONDS);
+
+        verify(kafkaProducerService, never()).sendReplayEvent(second);
+        verify(replaySessionRepository).updateCheckpoint(SESSION_ID, 1L);
+    }
+
+    @Test
+    void renewLeases_LeaseLostBeforeSubmit_SessionIsNotStarted() {
+        acquireLease();
+        when(stringRedisTemplate.execute(eq(RENEW_SCRIPT), eq(LEASE_KEY), any(Object[].class))).thenReturn(0L);
+
+        replayEngine.renewLeases();
+
+        assertThrows(IllegalStateException.class, () -> replayEngine.submit(session(null)));
+        verify(replaySessionRepository).updateStatusIfIn(SESSION_ID, List.of(ReplaySessionStatus.RUNNING), ReplaySessionStatus.PAUSED);
+    }
+
+    @Test
+    void recoverOrphanedSessions_PausesOnlyUnleasedSessionsWithEventsLeft() {
+        ReplaySession leased = session("leased", null);
+        ReplaySession orphaned = session("orphaned", 4L);
+        ReplaySession published = session("published", 9L);
+        when(replaySessionRepository.findByStatus(ReplaySessionStatus.RUNNING)).thenReturn(List.of(leased, orphaned, published));
+        when(stringRedisTemplate.hasKey("replay:session-lease:leased")).thenReturn(true);
+        when(stringRedisTemplate.hasKey("replay:session-lease:orphaned")).thenReturn(false);
+        when(stringRedisTemplate.hasKey("replay:session-lease:published")).thenReturn(false);
+        when(replayEventRepository.existsBySessionIdAndIdGreaterThan("orphaned", 4L)).thenReturn(true);
+        when(replayEventRepository.existsBySessionIdAndIdGreaterThan("published", 9L)).thenReturn(false);
+
+        replayEngine.recoverOrphanedSessions();
+
+        verify(replaySessionRepository).updateStatusIfIn("orphaned", List.of(ReplaySessionStatus.RUNNING), ReplaySessionStatus.PAUSED);
+        verify(replaySessionRepository, never()).updateStatusIfIn(eq("leased"), any(), any());
+        verify(replaySessionRepository, never()).updateStatusIfIn(eq("published"), any(), any());
+    }
+
+    @Test
+    void onMessage_UnknownStatus_IsIgnored() {
+        DefaultMessage message = new DefaultMessage("replay:control".getBytes(StandardCharsets.UTF_8),
+                (SESSION_ID + ":RESTARTED").getBytes(StandardCharsets.UTF_8));
+
+        assertDoesNotThrow(() -> replayEngine.onMessage(message, null));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisScript<Long> script(String name) {
+        return (RedisScript<Long>) ReflectionTestUtils.getField(ReplayEngine.class, name);
+    }
+
+    private void acquireLease() {
+        when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(eq(LEASE_KEY.get(0)), anyString(), eq(Duration.ofMillis(15_000)))).thenReturn(true);
+        assertTrue(replayEngine.tryAcquireLease(SESSION_ID));
+    }
+
+    private static ReplaySession session(Long checkpoint) {
+        return session(SESSION_ID, checkpoint);
+    }
+
+    private static ReplaySession session(String sessionId, Long checkpoint) {
+        ReplaySession session = new ReplaySession();
+        session.setSessionId(sessionId);
+        session.setStatus(ReplaySessionStatus.RUNNING);
+        session.setLastPublishedReplayEventId(checkpoint);
+        return session;
+    }
+
+    private static ReplayEvent replayEvent(Long id, String eventId) {
+        ReplayEvent replayEvent = new ReplayEvent();
+        replayEvent.setId(id);
+        replayEvent.setSessionId(SESSION_ID);
+        replayEvent.setEventId(eventId);
+        return replayEvent;
+    }
+
+    private static Event event(String eventId) {
+        Event event = new Event();
+        event.setEventId(eventId);
+        event.setEventType("OrderCreated");
+        return event;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.event_replay_dlq_system.service.replay;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenBucketRateLimiterTest {
+
+    private AtomicLong clock;
+    private TokenBucketRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        clock = new AtomicLong(0);
+        limiter = new TokenBucketRateLimiter(10, 1, clock::get);
+    }
+
+    @Test
+    void tryAcquire_AllowsBurstUpToCapacity() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    void reserve_ReturnsWaitUntilNextToken() {
+        drain();
+
+        long waitNanos = limiter.reserve();
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), waitNanos);
+    }
+
+    @Test
+    void tryAcquire_RefillsAtConfiguredRate() {
+        drain();
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(300));
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    void tryAcquire_NeverExceedsCapacityAfterIdle() {
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(60));
+
+        int acquired = 0;
+        while (limiter.tryAcquire()) {
+            acquired++;
+        }
+
+        assertEquals(10, acquired);
+    }
+
+    @Test
+    void setRate_ShrinksCapacityAndChangesRefill() {
+        limiter.setRate(2);
+
+        assertEquals(2, limiter.getRate());
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void acquire_ReturnsOnStopWithoutWaitingForToken() throws Exception {
+        // one token per 100s
+        TokenBucketRateLimiter slow = new TokenBucketRateLimiter(0.01, 1, clock::get);
+        assertTrue(slow.tryAcquire());
+
+        AtomicBoolean stop = new AtomicBoolean();
+        CompletableFuture<Boolean> acquired = CompletableFuture.supplyAsync(() -> {
+            try {
+                return slow.acquire(stop::get);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        Thread.sleep(50);
+        assertFalse(acquired.isDone());
+
+        stop.set(true);
+        slow.wakeUp();
+
+        assertFalse(acquired.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void constructor_RejectsNonPositiveRate() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucketRateLimiter(0, 1));
+    }
+
+    private void drain() {
+        while (limiter.tryAcquire()) {
+            // empty the bucket
+        }
+    }
+}
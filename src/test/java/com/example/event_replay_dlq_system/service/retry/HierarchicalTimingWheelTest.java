@@ -0,0 +1,61 @@
+package com.example.event_replay_dlq_system.service.retry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HierarchicalTimingWheelTest {
+
+    private final HierarchicalTimingWheel<String> wheel = new HierarchicalTimingWheel<>(5, 8, 1_000);
+
+    @Test
+    void entry_FiresOnFirstAdvancePastDueTime() {
+        assertTrue(wheel.add("a", 1_012, 1_000));
+
+        assertTrue(wheel.advance(1_010).isEmpty());
+        assertTrue(wheel.advance(1_011).isEmpty());
+        assertEquals(List.of("a"), wheel.advance(1_012));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void dueEntry_IsNotAdded() {
+        assertFalse(wheel.add("a", 1_000, 1_000));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void farEntry_CascadesThroughOverflowLevels() {
+        // the finest level spans 40ms, this needs two overflow levels
+        assertTrue(wheel.add("far", 1_700, 1_000));
+        assertTrue(wheel.add("near", 1_030, 1_000));
+
+        List<String> fired = new ArrayList<>();
+        for (long now = 1_000; now < 1_700; now += 5) {
+            fired.addAll(wheel.advance(now));
+            if (now < 1_030) {
+                assertTrue(fired.isEmpty());
+            }
+        }
+        assertEquals(List.of("near"), fired);
+        assertEquals(List.of("far"), wheel.advance(1_700));
+    }
+
+    @Test
+    void clockJump_FiresEverythingDue() {
+        wheel.add("a", 1_003, 1_000);
+        wheel.add("b", 1_100, 1_000);
+        wheel.add("c", 5_000, 1_000);
+        wheel.add("d", 9_000, 1_000);
+
+        List<String> fired = wheel.advance(6_000);
+
+        assertEquals(3, fired.size());
+        assertTrue(fired.containsAll(List.of("a", "b", "c")));
+        assertEquals(1, wheel.size());
+        assertEquals(List.of("d"), wheel.advance(9_000));
+    }
+}
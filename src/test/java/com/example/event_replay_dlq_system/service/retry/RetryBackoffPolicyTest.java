@@ -0,0 +1,62 @@
+package com.example.event_replay_dlq_system.service.retry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RetryBackoffPolicyTest {
+
+    private final Random random = new Random(42);
+
+    @Test
+    void noJitter_IsCappedExponential() {
+        RetryBackoffPolicy policy = new RetryBackoffPolicy(RetryBackoffPolicy.Jitter.NONE, 1_000, 60_000, random::nextDouble);
+
+        assertEquals(2_000, policy.delay(1).toMillis());
+        assertEquals(32_000, policy.delay(5).toMillis());
+        assertEquals(60_000, policy.delay(6).toMillis());
+        assertEquals(60_000, policy.delay(100).toMillis());
+    }
+
+    @Test
+    void noJitter_LargeAttemptsDoNotOverflow() {
+        RetryBackoffPolicy policy = new RetryBackoffPolicy(RetryBackoffPolicy.Jitter.NONE, 1_000, Long.MAX_VALUE / 2, random::nextDouble);
+
+        for (int attempt = 50; attempt <= 64; attempt++) {
+            assertTrue(policy.delay(attempt).toMillis() > 0, "attempt " + attempt);
+        }
+        assertEquals(Long.MAX_VALUE / 2, policy.delay(54).toMillis());
+    }
+
+    @Test
+    void fullJitter_StaysWithinExponentialDelay() {
+        RetryBackoffPolicy policy = new RetryBackoffPolicy(RetryBackoffPolicy.Jitter.FULL, 1_000, 60_000, random::nextDouble);
+
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 1_000; i++) {
+            long delay = policy.delay(3).toMillis();
+            assertTrue(delay >= 0 && delay <= 8_000);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        // spread over the whole range instead of one instant
+        assertTrue(min < 1_000);
+        assertTrue(max > 7_000);
+    }
+
+    @Test
+    void decorrelatedJitter_StaysBetweenBaseAndCap() {
+        RetryBackoffPolicy policy = new RetryBackoffPolicy(RetryBackoffPolicy.Jitter.DECORRELATED, 1_000, 60_000, random::nextDouble);
+
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            for (int i = 0; i < 100; i++) {
+                long delay = policy.delay(attempt).toMillis();
+                assertTrue(delay >= 1_000 && delay <= 60_000);
+            }
+        }
+        assertTrue(policy.delay(1).toMillis() <= 3_000);
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.event_replay_dlq_system.service.retry;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class RetryShardLeasesTest {
+
+    private static final String LEASE_KEY_PREFIX = "event:retry:shard-lease:";
+    private static final Duration LEASE = Duration.ofMillis(15_000);
+    private static final RedisScript<Long> RENEW_SCRIPT = script("RENEW_SCRIPT");
+    private static final RedisScript<Long> RELEASE_SCRIPT = script("RELEASE_SCRIPT");
+
+    @Mock
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @InjectMocks
+    private RetryShardLeases retryShardLeases;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(retryShardLeases, "shards", 4);
+        ReflectionTestUtils.setField(retryShardLeases, "leaseMs", LEASE.toMillis());
+        ReflectionTestUtils.setField(retryShardLeases, "backend", "redis");
+    }
+
+    @Test
+    void heartbeat_OnlyNode_TakesAllShards() {
+        stubRedis();
+        when(zSetOperations.zCard(RetryShardLeases.NODES_KEY)).thenReturn(1L);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), eq(LEASE))).thenReturn(true);
+
+        retryShardLeases.heartbeat();
+
+        assertEquals(Set.of(0, 1, 2, 3), retryShardLeases.ownedShards());
+        verify(zSetOperations).add(eq(RetryShardLeases.NODES_KEY), anyString(), anyDouble());
+    }
+
+    @Test
+    void heartbeat_NodeJoins_GivesBackShardsBeyondFairShare() {
+        stubRedis();
+        when(zSetOperations.zCard(RetryShardLeases.NODES_KEY)).thenReturn(1L, 2L);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), eq(LEASE))).thenReturn(true);
+        when(stringRedisTemplate.execute(eq(RENEW_SCRIPT), anyList(), any(Object[].class))).thenReturn(1L);
+
+        retryShardLeases.heartbeat();
+        retryShardLeases.heartbeat();
+
+        assertEquals(2, retryShardLeases.ownedShards().size());
+        verify(stringRedisTemplate, times(4)).execute(eq(RENEW_SCRIPT), anyList(), any(Object[].class));
+        verify(stringRedisTemplate, times(2)).execute(eq(RELEASE_SCRIPT), anyList(), any(Object[].class));
+        verify(valueOperations, times(4)).setIfAbsent(anyString(), anyString(), eq(LEASE));
+    }
+
+    @Test
+    void heartbeat_ShardsHeldByOtherNode_TakesOnlyFreeOnes() {
+        stubRedis();
+        when(zSetOperations.zCard(RetryShardLeases.NODES_KEY)).thenReturn(2L);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), eq(LEASE)))
+                .thenAnswer(invocation -> shardOf(invocation.getArgument(0)) >= 2);
+
+        retryShardLeases.heartbeat();
+
+        assertEquals(Set.of(2, 3), retryShardLeases.ownedShards());
+    }
+
+    @Test
+    void heartbeat_OtherNodeLeasesExpired_TakesItsShardsOver() {
+        stubRedis();
+        when(zSetOperations.zCard(RetryShardLeases.NODES_KEY)).thenReturn(2L, 1L);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), eq(LEASE)))
+                .thenAnswer(invocation -> shardOf(invocation.getArgument(0)) >= 2)
+                .thenAnswer(invocation -> shardOf(invocation.getArgument(0)) >= 2)
+                .thenReturn(true);
+        when(stringRedisTemplate.execute(eq(RENEW_SCRIPT), anyList(), any(Object[].class))).thenReturn(1L);
+
+        retryShardLeases.heartbeat();
+        assertEquals(Set.of(2, 3), retryShardLeases.ownedShards());
+
+        retryShardLeases.heartbeat();
+
+        assertEquals(Set.of(0, 1, 2, 3), retryShardLeases.ownedShards());
+        verify(zSetOperations, times(2)).removeRangeByScore(eq(RetryShardLeases.NODES_KEY), eq(0.0), anyDouble());
+    }
+
+    @Test
+    void heartbeat_LostLease_DropsShard() {
+        stubRedis();
+        when(zSetOperations.zCard(RetryShardLeases.NODES_KEY)).thenReturn(1L);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), eq(LEASE)))
+                .thenReturn(true, true, true, true, false);
+        when(stringRedisTemplate.execute(eq(RENEW_SCRIPT), anyList(), any(Object[].class)))
+                .thenAnswer(invocation -> shardOf(invocation.<List<String>>getArgument(1).get(0)) == 1 ? 0L : 1L);
+
+        retryShardLeases.heartbeat();
+        retryShardLeases.heartbeat();
+
+        assertEquals(Set.of(0, 2, 3), retryShardLeases.ownedShards());
+    }
+
+    @Test
+    void heartbeat_RedisDown_KeepsShardsUntilLeasesRunOut() {
+        stubRedis();
+        when(zSetOperations.zCard(RetryShardLeases.NODES_KEY)).thenReturn(1L);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), eq(LEASE))).thenReturn(true);
+        retryShardLeases.heartbeat();
+        when(zSetOperations.add(anyString(), anyString(), anyDouble())).thenThrow(new IllegalStateException("redis down"));
+
+        assertDoesNotThrow(() -> retryShardLeases.heartbeat());
+
+        assertEquals(Set.of(0, 1, 2, 3), retryShardLeases.ownedShards());
+    }
+
+    @Test
+    void heartbeat_OtherBackend_DoesNothing() {
+        ReflectionTestUtils.setField(retryShardLeases, "backend", "topics");
+
+        retryShardLeases.heartbeat();
+
+        assertTrue(retryShardLeases.ownedShards().isEmpty());
+        verifyNoInteractions(stringRedisTemplate);
+    }
+
+    @Test
+    void shutdown_GivesBackShardsAndLeavesNodes() {
+        stubRedis();
+        when(zSetOperations.zCard(RetryShardLeases.NODES_KEY)).thenReturn(1L);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), eq(LEASE))).thenReturn(true);
+        retryShardLeases.heartbeat();
+
+        retryShardLeases.shutdown();
+
+        assertTrue(retryShardLeases.ownedShards().isEmpty());
+        verify(stringRedisTemplate, times(4)).execute(eq(RELEASE_SCRIPT), anyList(), any(Object[].class));
+        verify(zSetOperations).remove(eq(RetryShardLeases.NODES_KEY), any(Object[].class));
+    }
+
+    private void stubRedis() {
+        when(stringRedisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        lenient().when(stringRedisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+
+    private static int shardOf(String leaseKey) {
+        return Integer.parseInt(leaseKey.substring(LEASE_KEY_PREFIX.length()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static RedisScript<Long> script(String name) {
+        return (RedisScript<Long>) ReflectionTestUtils.getField(RetryShardLeases.class, name);
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.event_replay_dlq_system.service.retry;
+
+import com.example.event_replay_dlq_system.entity.Event;
+import com.example.event_replay_dlq_system.service.KafkaProducerService;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.kafka.listener.AcknowledgingConsumerAwareMessageListener;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.support.Acknowledgment;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class TieredRetryTopicsTest {
+
+    private static final String SHORT_TIER = "event-retry-1s";
+    private static final String LONG_TIER = "event-retry-60s";
+
+    @Mock
+    private KafkaProducerService kafkaProducerService;
+
+    @Mock
+    private ConcurrentKafkaListenerContainerFactory<String, Object> containerFactory;
+
+    @Mock
+    private KafkaAdmin kafkaAdmin;
+
+    @Mock
+    private ConcurrentMessageListenerContainer<String, Object> container;
+
+    @Mock
+    private Consumer<String, Object> consumer;
+
+    @Mock
+    private Acknowledgment ack;
+
+    private TieredRetryTopics tieredRetryTopics;
+
+    @BeforeEach
+    void setUp() {
+        tieredRetryTopics = new TieredRetryTopics(kafkaProducerService, containerFactory, kafkaAdmin,
+                "topics", "event-retry", "60, 1", 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        tieredRetryTopics.stop();
+    }
+
+    @Test
+    void publish_UsesSmallestTierCoveringTheDelay() {
+        Event event = event("evt-1");
+        when(kafkaProducerService.sendRetryTierEventWithAck(anyString(), eq(event), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        tieredRetryTopics.publish(event, Duration.ofSeconds(30));
+
+        verify(kafkaProducerService).sendRetryTierEventWithAck(eq(LONG_TIER), eq(event), anyLong());
+    }
+
+    @Test
+    void publish_DelayBeyondLargestTier_KeepsItsDueTime() {
+        Event event = event("evt-1");
+        when(kafkaProducerService.sendRetryTierEventWithAck(anyString(), eq(event), anyLong()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        long before = System.currentTimeMillis();
+
+        tieredRetryTopics.publish(event, Duration.ofMinutes(10));
+
+        ArgumentCaptor<Long> dueAt = ArgumentCaptor.forClass(Long.class);
+        verify(kafkaProducerService).sendRetryTierEventWithAck(eq(LONG_TIER), eq(event), dueAt.capture());
+        assertTrue(dueAt.getValue() >= before + Duration.ofMinutes(10).toMillis());
+    }
+
+    @Test
+    void headNotDue_PausesPartitionAndSeeksBackUntilItIsDue() {
+        List<AcknowledgingConsumerAwareMessageListener<String, Object>> listeners = startTiers();
+        TopicPartition partition = new TopicPartition(SHORT_TIER, 0);
+        Event event = event("evt-1");
+        long timestamp = System.currentTimeMillis() - 800;
+
+        listeners.get(0).onMessage(record(SHORT_TIER, 4, timestamp, event, null), ack, consumer);
+        listeners.get(0).onMessage(record(SHORT_TIER, 5, timestamp, event("evt-2"), null), ack, consumer);
+
+        verify(consumer).seek(partition, 4);
+        verify(container).pausePartition(partition);
+        verify(container, timeout(2_000)).resumePartition(partition);
+        verifyNoInteractions(kafkaProducerService, ack);
+
+        when(kafkaProducerService.sendRetryEventWithAck(event)).thenReturn(CompletableFuture.completedFuture(null));
+        listeners.get(0).onMessage(record(SHORT_TIER, 4, timestamp, event, null), ack, consumer);
+
+        verify(kafkaProducerService).sendRetryEventWithAck(event);
+        verify(ack).acknowledge();
+        verify(container, times(1)).pausePartition(partition);
+    }
+
+    @Test
+    void dueRecord_PastItsDueTime_GoesToTheRetryTopic() {
+        List<AcknowledgingConsumerAwareMessageListener<String, Object>> listeners = startTiers();
+        Event event = event("evt-1");
+        long timestamp = System.currentTimeMillis() - 61_000;
+        when(kafkaProducerService.sendRetryEventWithAck(event)).thenReturn(CompletableFuture.completedFuture(null));
+
+        listeners.get(1).onMessage(record(LONG_TIER, 0, timestamp, event, timestamp + 60_000), ack, consumer);
+
+        verify(kafkaProducerService).sendRetryEventWithAck(event);
+        verify(kafkaProducerService, never()).sendRetryTierEventWithAck(anyString(), any(), anyLong());
+        verify(ack).acknowledge();
+    }
+
+    @Test
+    void dueRecord_BeforeItsDueTime_GoesAnotherRound() {
+        List<AcknowledgingConsumerAwareMessageListener<String, Object>> listeners = startTiers();
+        Event event = event("evt-1");
+        long timestamp = System.currentTimeMillis() - 61_000;
+        long dueAt = System.currentTimeMillis() + Duration.ofMinutes(5).toMillis();
+        when(kafkaProducerService.sendRetryTierEventWithAck(LONG_TIER, event, dueAt))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        listeners.get(1).onMessage(record(LONG_TIER, 0, timestamp, event, dueAt), ack, consumer);
+
+        verify(kafkaProducerService).sendRetryTierEventWithAck(LONG_TIER, event, dueAt);
+        verify(kafkaProducerService, never()).sendRetryEventWithAck(any());
+        verify(ack).acknowledge();
+    }
+
+    @Test
+    void lastRound_MovesToTheTierCoveringTheRemainingDelay() {
+        List<AcknowledgingConsumerAwareMessageListener<String, Object>> listeners = startTiers();
+        Event event = event("evt-1");
+        long timestamp = System.currentTimeMillis() - 61_000;
+        long dueAt = System.currentTimeMillis() + 500;
+        when(kafkaProducerService.sendRetryTierEventWithAck(SHORT_TIER, event, dueAt))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        listeners.get(1).onMessage(record(LONG_TIER, 0, timestamp, event, dueAt), ack, consumer);
+
+        verify(kafkaProducerService).sendRetryTierEventWithAck(SHORT_TIER, event, dueAt);
+        verify(ack).acknowledge();
+    }
+
+    @Test
+    void start_OtherBackend_DoesNotStartTiers() {
+        TieredRetryTopics disabled = new TieredRetryTopics(kafkaProducerService, containerFactory, kafkaAdmin,
+                "redis", "event-retry", "60, 1", 3);
+
+        disabled.start();
+        disabled.stop();
+
+        assertFalse(disabled.isEnabled());
+        verifyNoInteractions(containerFactory, kafkaAdmin);
+    }
+
+    /**
+     * @return listeners of the tiers, shortest tier first
+     */
+    @SuppressWarnings("unchecked")
+    private List<AcknowledgingConsumerAwareMessageListener<String, Object>> startTiers() {
+        when(containerFactory.createContainer(any(String[].class))).thenReturn(container);
+        when(container.getContainerProperties()).thenReturn(new ContainerProperties(SHORT_TIER));
+
+        tieredRetryTopics.start();
+
+        verify(containerFactory).createContainer(SHORT_TIER);
+        verify(containerFactory).createContainer(LONG_TIER);
+        ArgumentCaptor<Object> listeners = ArgumentCaptor.forClass(Object.class);
+        verify(container, times(2)).setupMessageListener(listeners.capture());
+        return listeners.getAllValues().stream()
+                .map(listener -> (AcknowledgingConsumerAwareMessageListener<String, Object>) listener)
+                .toList();
+    }
+
+    private static ConsumerRecord<String, Object> record(String topic, long offset, long timestamp, Event event, Long dueAt) {
+        RecordHeaders headers = new RecordHeaders();
+        if (dueAt != null) {
+            headers.add(KafkaProducerService.RETRY_DUE_AT_HEADER, String.valueOf(dueAt).getBytes(StandardCharsets.UTF_8));
+        }
+        return new ConsumerRecord<>(topic, 0, offset, timestamp, TimestampType.CREATE_TIME, 0, 0,
+                event.getEventId(), event, headers, Optional.empty());
+    }
+
+    private static Event event(String eventId) {
+        Event event = new Event();
+        event.setEventId(eventId);
+        return event;
+    }
+}